@@ -2,10 +2,36 @@ package com.skillup;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.HashMap;
+import java.util.Map;
 
 @SpringBootApplication
+@EnableScheduling
 public class SkillUpApplication {
     public static void main(String[] args) {
-        SpringApplication.run(SkillUpApplication.class, args);
+        SpringApplication application = new SpringApplication(SkillUpApplication.class);
+        application.setDefaultProperties(defaultProperties());
+        application.run(args);
+    }
+
+    /**
+     * Valeurs par défaut, surchargeables par les variables d'environnement
+     */
+    private static Map<String, Object> defaultProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        // Pas d'EntityManager ouvert pendant toute la requête : la connexion JDBC est rendue au pool
+        // dès la fin de chaque transaction, notamment pendant les appels à OpenRouter
+        properties.put("spring.jpa.open-in-view", "false");
+        // Plusieurs threads pour les tâches planifiées : un long passage de résumés de notes
+        // ne retarde pas l'écriture des compteurs de consommation ni l'archivage
+        properties.put("spring.task.scheduling.pool.size", "4");
+        // Insertions regroupées en lots JDBC, triées par entité (profil et achievements d'une inscription)
+        properties.put("spring.jpa.properties.hibernate.jdbc.batch_size", "50");
+        properties.put("spring.jpa.properties.hibernate.order_inserts", "true");
+        // Métriques applicatives (cache IA, etc.) consultables via /actuator/metrics
+        properties.put("management.endpoints.web.exposure.include", "health,metrics");
+        return properties;
     }
-} 
\ No newline at end of file
+}
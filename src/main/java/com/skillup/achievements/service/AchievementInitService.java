@@ -24,9 +24,23 @@ public class AchievementInitService {
             return;
         }
 
+        // Sauvegarder tous les achievements
+        achievementRepository.saveAll(defaultAchievements(user));
+    }
+
+    /**
+     * Achievements par défaut d'un utilisateur qui vient d'être créé, sans vérification préalable :
+     * les insertions partent en lot avec les autres écritures de l'inscription
+     */
+    @Transactional
+    public void initializeAchievementsForNewUser(User user) {
+        achievementRepository.saveAll(defaultAchievements(user));
+    }
+
+    private List<Achievement> defaultAchievements(User user) {
         // Liste des achievements par défaut
         // Tous les achievements commencent à 0 sauf "Premier pas" qui est automatiquement débloqué
-        List<Achievement> defaultAchievements = Arrays.asList(
+        return Arrays.asList(
             // Premier pas est automatiquement débloqué lors de l'inscription
             createAchievement(user, "Premier pas", "Vous avez commencé votre parcours d'apprentissage", "trophy", 1, 1, true),
             // Les autres achievements commencent à 0 et doivent être débloqués par des actions spécifiques
@@ -35,9 +49,6 @@ public class AchievementInitService {
             createAchievement(user, "Prise de notes", "Créez 10 notes", "book", 0, 10, false),
             createAchievement(user, "Apprentissage constant", "Connectez-vous 7 jours de suite", "calendar", 0, 7, false)
         );
-
-        // Sauvegarder tous les achievements
-        achievementRepository.saveAll(defaultAchievements);
     }
 
     private Achievement createAchievement(User user, String title, String description, String icon, int progress, int total, boolean unlocked) {
@@ -2,7 +2,11 @@ package com.skillup.auth.repository;
 
 import com.skillup.auth.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -10,4 +14,11 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, String> {
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    // Remplace le hash seulement s'il n'a pas changé depuis sa lecture : le nouveau est calculé hors transaction
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :newPassword where u.id = :id and u.password = :currentPassword")
+    int updatePassword(@Param("id") String id, @Param("currentPassword") String currentPassword,
+                       @Param("newPassword") String newPassword);
 } 
\ No newline at end of file
@@ -11,12 +11,13 @@ import com.skillup.auth.repository.UserRepository;
 import com.skillup.common.security.JwtUtil;
 import com.skillup.profile.service.ProfileService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 @RequiredArgsConstructor
@@ -30,29 +31,32 @@ public class AuthService {
     private final UserMapper userMapper;
     private final ProfileService profileService;
     private final AchievementInitService achievementInitService;
+    private final TransactionTemplate transactionTemplate;
 
-    @Transactional
     public AuthResponse register(RegisterRequest request) {
-        if (userRepository.existsByEmail(request.getEmail())) {
-            throw new RuntimeException("Email already exists");
-        }
+        User newUser = userMapper.toEntity(request);
+        // Hachage avant l'ouverture de la transaction : l'attente du pool BCrypt ne retient pas de connexion JDBC
+        newUser.setPassword(passwordEncoder.encode(request.getPassword()));
 
-        User user = userMapper.toEntity(request);
-        user.setPassword(passwordEncoder.encode(request.getPassword()));
+        User user = transactionTemplate.execute(status -> {
+            User saved;
+            try {
+                // La contrainte d'unicité sur l'email tient lieu de vérification préalable
+                saved = userRepository.saveAndFlush(newUser);
+            } catch (DataIntegrityViolationException e) {
+                throw new RuntimeException("Email already exists");
+            }
 
-        user = userRepository.save(user);
-        
-        // Créer automatiquement un profil avec des données par défaut
-        profileService.createProfileWithDefaults(user);
-        
-        // Initialiser les achievements par défaut
-        achievementInitService.initializeAchievements(user);
+            // Créer automatiquement un profil avec des données par défaut
+            profileService.createDefaultProfileForNewUser(saved);
 
-        Authentication authentication = authenticationManager.authenticate(
-            new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
-        );
+            // Initialiser les achievements par défaut (profil et achievements insérés en lot à la validation)
+            achievementInitService.initializeAchievementsForNewUser(saved);
+            return saved;
+        });
 
-        String token = jwtUtil.generateToken(authentication);
+        // L'utilisateur vient d'être créé avec ce mot de passe : pas de nouvelle authentification
+        String token = jwtUtil.generateToken(user);
         String refreshToken = jwtUtil.generateRefreshToken(user.getEmail());
 
         return new AuthResponse(
@@ -67,9 +71,9 @@ public class AuthService {
             new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
         );
 
-        User user = userRepository.findByEmail(request.getEmail())
-            .orElseThrow(() -> new RuntimeException("User not found"));
-            
+        // Utilisateur chargé (ou lu dans le cache) par le UserDetailsService pendant l'authentification
+        User user = (User) authentication.getPrincipal();
+
         // Mettre à jour l'achievement "Apprentissage constant"
         achievementProgressService.checkUserLogin(user);
 
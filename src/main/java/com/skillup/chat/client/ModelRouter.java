@@ -0,0 +1,363 @@
+package com.skillup.chat.client;
+
+import com.skillup.chat.client.OpenRouterClient.Message;
+import com.skillup.chat.client.OpenRouterClient.OpenRouterRequest;
+import com.skillup.chat.client.OpenRouterClient.OpenRouterResponse;
+import com.skillup.chat.client.OpenRouterClient.Usage;
+import com.skillup.chat.config.OpenRouterConfig;
+import com.skillup.chat.service.CancellationSignal;
+import com.skillup.chat.service.GenerationCancelledException;
+import com.skillup.chat.service.TokenEstimator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Routage des complétions sur une liste ordonnée de modèles (openrouter.models).
+ * Chaque modèle a son disjoncteur et son historique de latence (p50/p95 glissants) : une demande passe
+ * au modèle sain suivant dès qu'une erreur survient ou que le budget de latence est dépassé.
+ * En streaming, le repli n'est possible que tant qu'aucun fragment n'a été transmis.
+ * Une génération annulée interrompt l'appel en cours, sans repli ni échec imputé au modèle.
+ * Une demande partie chez OpenRouter mais sans réponse complète (annulée, ou flux coupé après les
+ * premiers fragments) est quand même facturée : sa consommation estimée est remise à onAbandoned.
+ */
+@Component
+public class ModelRouter {
+
+    private final OpenRouterClient openRouterClient;
+    private final OpenRouterConfig openRouterConfig;
+    private final MeterRegistry meterRegistry;
+    private final long latencyBudgetMs;
+    private final long minLatencyBudgetMs;
+    private final int failureThreshold;
+    private final long openMs;
+
+    private final Map<String, ModelHealth> health = new ConcurrentHashMap<>();
+    private final Counter fallbacks;
+
+    @Autowired
+    public ModelRouter(OpenRouterClient openRouterClient, OpenRouterConfig openRouterConfig, MeterRegistry meterRegistry,
+                       @Value("${openrouter.routing.latency-budget-ms:20000}") long latencyBudgetMs,
+                       @Value("${openrouter.routing.min-latency-budget-ms:5000}") long minLatencyBudgetMs,
+                       @Value("${openrouter.routing.failure-threshold:3}") int failureThreshold,
+                       @Value("${openrouter.routing.open-ms:30000}") long openMs) {
+        this.openRouterClient = openRouterClient;
+        this.openRouterConfig = openRouterConfig;
+        this.meterRegistry = meterRegistry;
+        this.latencyBudgetMs = latencyBudgetMs;
+        this.minLatencyBudgetMs = minLatencyBudgetMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        this.fallbacks = Counter.builder("openrouter.model.fallbacks").register(meterRegistry);
+    }
+
+    /**
+     * Modèle préféré : seules ses réponses peuvent être mises en cache
+     */
+    public String primaryModel() {
+        return openRouterConfig.getModels().get(0);
+    }
+
+    public CompletableFuture<Completion> complete(List<Message> messages, CancellationSignal cancellation,
+                                                  Consumer<Completion> onAbandoned) {
+        List<String> models = openRouterConfig.getModels();
+        return attempt(messages, models, 0, null, cancellation, new StreamProgress(), onAbandoned, (model, last) -> {
+            CompletableFuture<OpenRouterResponse> response = openRouterClient.complete(request(model, messages));
+            // Le dernier candidat dispose du délai de lecture complet : il n'y a plus de repli possible
+            return last ? response : response.orTimeout(budgetFor(model), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    public CompletableFuture<Completion> stream(List<Message> messages, CancellationSignal cancellation,
+                                                Consumer<String> onDelta, Consumer<Completion> onAbandoned) {
+        StreamProgress progress = new StreamProgress();
+        List<String> models = openRouterConfig.getModels();
+        return attempt(messages, models, 0, null, cancellation, progress, onAbandoned, (model, last) -> {
+            CompletableFuture<OpenRouterResponse> response = openRouterClient.stream(request(model, messages), delta -> {
+                progress.append(delta);
+                onDelta.accept(delta);
+            });
+            if (!last) {
+                // Le budget porte sur le premier fragment : une fois le flux commencé, il va à son terme
+                long budget = budgetFor(model);
+                CompletableFuture.delayedExecutor(budget, TimeUnit.MILLISECONDS).execute(() -> {
+                    if (!progress.emitted()) {
+                        response.completeExceptionally(new TimeoutException(
+                                "Aucun fragment reçu de " + model + " en " + budget + " ms"));
+                    }
+                });
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Essaie les modèles à partir de l'indice from, en sautant ceux dont le disjoncteur est ouvert.
+     * progress suit les fragments déjà transmis au client (streaming). Chaque issue est imputée
+     * au disjoncteur du modèle.
+     */
+    private CompletableFuture<Completion> attempt(List<Message> messages, List<String> models, int from,
+                                                  Throwable lastError, CancellationSignal cancellation,
+                                                  StreamProgress progress, Consumer<Completion> onAbandoned,
+                                                  AttemptFactory factory) {
+        if (cancellation.isCancelled()) {
+            return CompletableFuture.failedFuture(new GenerationCancelledException("avant l'appel au modèle"));
+        }
+        int index = from;
+        while (index < models.size() && !health(models.get(index)).allowRequest()) {
+            index++;
+        }
+        if (index >= models.size()) {
+            String message = lastError != null
+                    ? "Aucun modèle n'a pu générer de réponse: " + describe(lastError)
+                    : "Aucun modèle disponible pour le moment";
+            return CompletableFuture.failedFuture(new OpenRouterException(message, lastError));
+        }
+
+        String model = models.get(index);
+        int next = index + 1;
+        ModelHealth modelHealth = health(model);
+        long startedAt = System.nanoTime();
+
+        CompletableFuture<Completion> completion;
+        try {
+            CompletableFuture<OpenRouterResponse> response = factory.start(model, next >= models.size());
+            // Échouer le futur du client suffit à interrompre l'échange HTTP avec OpenRouter
+            cancellation.onCancel(reason -> response.completeExceptionally(new GenerationCancelledException(reason)));
+            completion = response.thenApply(result -> toCompletion(result, model, messages));
+        } catch (RuntimeException e) {
+            completion = CompletableFuture.failedFuture(e);
+        }
+
+        return completion.handle((result, ex) -> {
+            if (ex == null) {
+                // Latence comparée au budget : délai du premier fragment en streaming, réponse complète sinon
+                long endedAt = progress.emitted() ? progress.firstDeltaAt() : System.nanoTime();
+                modelHealth.recordSuccess((endedAt - startedAt) / 1_000_000);
+                return CompletableFuture.completedFuture(result);
+            }
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof GenerationCancelledException) {
+                meterRegistry.counter("openrouter.model.cancelled", "model", model).increment();
+                modelHealth.recordCancelled();
+                // La demande est partie : le prompt et les fragments déjà générés sont facturés.
+                // Pour une génération partagée, le signal n'est annulé qu'au départ de son dernier appelant :
+                // la consommation partielle n'est décomptée qu'une fois, quand plus personne n'attend la réponse
+                onAbandoned.accept(estimate(model, messages, progress.content()));
+                return CompletableFuture.<Completion>failedFuture(cause);
+            }
+            modelHealth.recordFailure();
+            System.err.println("Échec du modèle " + model + ": " + describe(cause));
+            if (progress.emitted()) {
+                // Des fragments ont déjà été transmis : un autre modèle ne peut pas reprendre la réponse
+                onAbandoned.accept(estimate(model, messages, progress.content()));
+                return CompletableFuture.<Completion>failedFuture(cause);
+            }
+            if (next < models.size()) {
+                fallbacks.increment();
+            }
+            return attempt(messages, models, next, cause, cancellation, progress, onAbandoned, factory);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Extrait le texte de la réponse et sa consommation de tokens. Quand le fournisseur ne renvoie pas
+     * de bloc usage, les tokens sont estimés localement pour que les quotas restent appliqués.
+     */
+    private static Completion toCompletion(OpenRouterResponse response, String model, List<Message> messages) {
+        if (response == null || response.getChoices() == null || response.getChoices().isEmpty()
+                || response.getChoices().get(0).getMessage() == null) {
+            throw new IllegalStateException("Réponse vide reçue d'OpenRouter");
+        }
+        String content = response.getChoices().get(0).getMessage().getContent();
+        if (content == null || content.isEmpty()) {
+            throw new IllegalStateException("Réponse vide reçue d'OpenRouter");
+        }
+
+        Usage usage = response.getUsage();
+        if (usage != null && usage.getPromptTokens() + usage.getCompletionTokens() > 0) {
+            return new Completion(content, model, usage.getPromptTokens(), usage.getCompletionTokens());
+        }
+        return estimate(model, messages, content);
+    }
+
+    /**
+     * Consommation estimée localement d'une demande : le prompt complet et le texte généré
+     */
+    private static Completion estimate(String model, List<Message> messages, String content) {
+        int promptTokens = 0;
+        for (Message message : messages) {
+            promptTokens += TokenEstimator.estimateMessage(message.getContent());
+        }
+        return new Completion(content, model, promptTokens, TokenEstimator.estimate(content));
+    }
+
+    /**
+     * Budget de latence d'un modèle : la valeur configurée, resserrée à deux fois son p95
+     * (sans descendre sous le minimum) dès que l'historique est suffisant
+     */
+    private long budgetFor(String model) {
+        long p95 = health(model).percentile(0.95);
+        if (p95 <= 0) {
+            return latencyBudgetMs;
+        }
+        return Math.min(latencyBudgetMs, Math.max(minLatencyBudgetMs, 2 * p95));
+    }
+
+    private static String describe(Throwable error) {
+        if (error instanceof TimeoutException && error.getMessage() == null) {
+            return "budget de latence dépassé";
+        }
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    private OpenRouterRequest request(String model, List<Message> messages) {
+        OpenRouterRequest request = new OpenRouterRequest();
+        request.setModel(model);
+        request.setMessages(messages);
+        return request;
+    }
+
+    private ModelHealth health(String model) {
+        return health.computeIfAbsent(model, key -> {
+            ModelHealth modelHealth = new ModelHealth();
+            Gauge.builder("openrouter.model.latency", modelHealth, h -> h.percentile(0.5))
+                    .tag("model", key).tag("quantile", "0.5").baseUnit("milliseconds").register(meterRegistry);
+            Gauge.builder("openrouter.model.latency", modelHealth, h -> h.percentile(0.95))
+                    .tag("model", key).tag("quantile", "0.95").baseUnit("milliseconds").register(meterRegistry);
+            Gauge.builder("openrouter.model.breaker.state", modelHealth, h -> h.stateCode())
+                    .tag("model", key).register(meterRegistry);
+            modelHealth.failures = Counter.builder("openrouter.model.failures").tag("model", key)
+                    .register(meterRegistry);
+            return modelHealth;
+        });
+    }
+
+    public record Completion(String content, String model, int promptTokens, int completionTokens) {
+    }
+
+    /**
+     * Fragments déjà transmis au client par un flux : instant (nanoTime) du premier et texte reçu
+     */
+    private static class StreamProgress {
+        private final StringBuffer content = new StringBuffer();
+        private volatile long firstDeltaAt;
+
+        void append(String delta) {
+            if (firstDeltaAt == 0) {
+                firstDeltaAt = System.nanoTime();
+            }
+            content.append(delta);
+        }
+
+        boolean emitted() {
+            return firstDeltaAt != 0;
+        }
+
+        long firstDeltaAt() {
+            return firstDeltaAt;
+        }
+
+        String content() {
+            return content.toString();
+        }
+    }
+
+    @FunctionalInterface
+    private interface AttemptFactory {
+        CompletableFuture<OpenRouterResponse> start(String model, boolean last);
+    }
+
+    private enum BreakerState {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    /**
+     * Disjoncteur et latences récentes d'un modèle. Après failureThreshold échecs consécutifs le modèle
+     * est écarté pendant openMs, puis une seule demande d'essai décide de sa réouverture.
+     */
+    private class ModelHealth {
+        private static final int WINDOW = 100;
+        // Percentiles significatifs seulement à partir de ce nombre d'échantillons
+        private static final int MIN_SAMPLES = 20;
+
+        private final long[] latencies = new long[WINDOW];
+        private int samples;
+        private int position;
+
+        private BreakerState state = BreakerState.CLOSED;
+        private int consecutiveFailures;
+        private long openUntil;
+        private Counter failures;
+
+        synchronized boolean allowRequest() {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() >= openUntil) {
+                        state = BreakerState.HALF_OPEN; // cette demande sert d'essai
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false; // un essai est déjà en cours
+            }
+        }
+
+        synchronized void recordSuccess(long latencyMs) {
+            latencies[position] = latencyMs;
+            position = (position + 1) % WINDOW;
+            samples = Math.min(samples + 1, WINDOW);
+            consecutiveFailures = 0;
+            state = BreakerState.CLOSED;
+        }
+
+        synchronized void recordFailure() {
+            failures.increment();
+            consecutiveFailures++;
+            if (state == BreakerState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = BreakerState.OPEN;
+                openUntil = System.currentTimeMillis() + openMs;
+            }
+        }
+
+        /**
+         * Demande annulée : rien n'est imputé au modèle. Si c'était l'essai, le disjoncteur redevient
+         * ouvert mais expiré, pour que la demande suivante serve de nouvel essai.
+         */
+        synchronized void recordCancelled() {
+            if (state == BreakerState.HALF_OPEN) {
+                state = BreakerState.OPEN;
+                openUntil = System.currentTimeMillis();
+            }
+        }
+
+        synchronized long percentile(double quantile) {
+            if (samples < MIN_SAMPLES) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(quantile * samples) - 1];
+        }
+
+        synchronized int stateCode() {
+            return state.ordinal();
+        }
+    }
+}
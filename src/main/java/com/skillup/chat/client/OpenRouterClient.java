@@ -0,0 +1,269 @@
+package com.skillup.chat.client;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillup.chat.config.OpenRouterConfig;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Passerelle asynchrone vers l'API chat/completions d'OpenRouter.
+ * Aucun appel ne bloque le thread appelant : les résultats sont exposés sous forme de CompletableFuture.
+ */
+@Component
+public class OpenRouterClient {
+
+    private final HttpClient httpClient;
+    private final OpenRouterConfig openRouterConfig;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OpenRouterClient(HttpClient openRouterHttpClient, OpenRouterConfig openRouterConfig, ObjectMapper objectMapper) {
+        this.httpClient = openRouterHttpClient;
+        this.openRouterConfig = openRouterConfig;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Demande une complétion complète et renvoie la réponse désérialisée.
+     * Si le futur renvoyé est annulé ou terminé en erreur par l'appelant (délai dépassé...),
+     * l'échange HTTP sous-jacent est annulé.
+     */
+    public CompletableFuture<OpenRouterResponse> complete(OpenRouterRequest request) {
+        request.setStream(null);
+        CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(
+                buildHttpRequest(request, "application/json"), HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<OpenRouterResponse> result = exchange
+                .thenApply(response -> {
+                    if (response.statusCode() >= 400) {
+                        throw new OpenRouterException(response.statusCode(),
+                                "OpenRouter a répondu " + response.statusCode() + ": " + response.body());
+                    }
+                    try {
+                        return objectMapper.readValue(response.body(), OpenRouterResponse.class);
+                    } catch (JsonProcessingException e) {
+                        throw new OpenRouterException("Réponse OpenRouter illisible", e);
+                    }
+                });
+        result.whenComplete((response, ex) -> {
+            if (ex != null) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Demande une complétion en streaming (stream: true). Chaque fragment de texte est transmis à onDelta
+     * dès sa réception ; le futur renvoyé contient, une fois le flux terminé, une réponse équivalente à
+     * celle de complete() : le texte complet et la consommation de tokens envoyée dans le dernier fragment.
+     */
+    public CompletableFuture<OpenRouterResponse> stream(OpenRouterRequest request, Consumer<String> onDelta) {
+        request.setStream(true);
+        SseLineSubscriber subscriber = new SseLineSubscriber(onDelta);
+
+        // Le statut est connu avant le corps : en cas d'erreur on lit le corps JSON au lieu du flux SSE
+        HttpResponse.BodyHandler<Void> bodyHandler = responseInfo -> {
+            if (responseInfo.statusCode() >= 400) {
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                        errorBody -> {
+                            subscriber.fail(new OpenRouterException(responseInfo.statusCode(),
+                                    "OpenRouter a répondu " + responseInfo.statusCode() + ": " + errorBody));
+                            return null;
+                        });
+            }
+            return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber);
+        };
+
+        CompletableFuture<HttpResponse<Void>> exchange = httpClient.sendAsync(
+                buildHttpRequest(request, "text/event-stream"), bodyHandler);
+        exchange.whenComplete((response, ex) -> {
+            if (ex != null) {
+                subscriber.fail(ex);
+            }
+        });
+        // Un arrêt décidé par l'appelant (délai, annulation) interrompt la lecture du flux
+        subscriber.getResult().whenComplete((content, ex) -> {
+            if (ex != null) {
+                subscriber.cancel();
+                exchange.cancel(true);
+            }
+        });
+        return subscriber.getResult();
+    }
+
+    private HttpRequest buildHttpRequest(OpenRouterRequest request, String accept) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new OpenRouterException("Impossible de sérialiser la requête OpenRouter", e);
+        }
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(openRouterConfig.getApiUrl() + "/chat/completions"))
+                .timeout(Duration.ofMillis(openRouterConfig.getReadTimeoutMs()))
+                .header("Content-Type", "application/json")
+                .header("Accept", accept)
+                .header("Authorization", "Bearer " + openRouterConfig.getApiKey())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    /**
+     * Lit les lignes SSE "data: {...}" d'OpenRouter et en extrait les fragments choices[0].delta.content
+     */
+    private class SseLineSubscriber implements Flow.Subscriber<String> {
+
+        private final Consumer<String> onDelta;
+        private final StringBuilder content = new StringBuilder();
+        private final CompletableFuture<OpenRouterResponse> result = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+        private Usage usage;
+
+        SseLineSubscriber(Consumer<String> onDelta) {
+            this.onDelta = onDelta;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (result.isDone()) {
+                return;
+            }
+            if (!line.startsWith("data:")) {
+                return; // lignes vides et commentaires de keep-alive
+            }
+            String data = line.substring(5).trim();
+            if ("[DONE]".equals(data)) {
+                return;
+            }
+            try {
+                JsonNode chunk = objectMapper.readTree(data);
+                JsonNode usageNode = chunk.path("usage");
+                if (usageNode.isObject()) {
+                    usage = objectMapper.treeToValue(usageNode, Usage.class);
+                }
+                String delta = chunk.path("choices").path(0).path("delta").path("content").asText("");
+                if (!delta.isEmpty()) {
+                    content.append(delta);
+                    deliver(delta);
+                }
+            } catch (Exception e) {
+                // Fragment illisible : le flux du modèle est abandonné
+                subscription.cancel();
+                fail(e);
+            }
+        }
+
+        /**
+         * L'échec d'un consommateur (client déconnecté) n'est pas celui du modèle : le flux continue.
+         * Seule l'annulation de la génération l'interrompt.
+         */
+        private void deliver(String delta) {
+            try {
+                onDelta.accept(delta);
+            } catch (RuntimeException e) {
+                System.err.println("Fragment OpenRouter non transmis: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            Choice choice = new Choice();
+            choice.setMessage(new Message("assistant", content.toString()));
+            OpenRouterResponse response = new OpenRouterResponse();
+            response.setChoices(List.of(choice));
+            response.setUsage(usage);
+            result.complete(response);
+        }
+
+        void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        void fail(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        CompletableFuture<OpenRouterResponse> getResult() {
+            return result;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Message {
+        private String role;
+        private String content;
+    }
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class OpenRouterRequest {
+        private String model;
+        private List<Message> messages;
+        private Boolean stream;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class OpenRouterResponse {
+        private List<Choice> choices;
+        private Usage usage;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Usage {
+        @JsonProperty("prompt_tokens")
+        private int promptTokens;
+
+        @JsonProperty("completion_tokens")
+        private int completionTokens;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Choice {
+        private Message message;
+        private int index;
+
+        @JsonProperty("finish_reason")
+        private String finishReason;
+    }
+}
@@ -0,0 +1,23 @@
+package com.skillup.chat.client;
+
+/**
+ * Erreur renvoyée par l'API OpenRouter (statut HTTP en erreur ou réponse inexploitable)
+ */
+public class OpenRouterException extends RuntimeException {
+
+    private final int statusCode;
+
+    public OpenRouterException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public OpenRouterException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
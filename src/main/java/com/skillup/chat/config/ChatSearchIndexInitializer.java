@@ -0,0 +1,50 @@
+package com.skillup.chat.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Crée au démarrage les index FULLTEXT de la recherche dans l'historique (ChatSearchService),
+ * sur les messages et sur le texte des messages archivés, que Hibernate ne sait pas déclarer.
+ * Sans eux, MATCH ... AGAINST échoue : l'erreur est seulement journalisée pour ne pas empêcher
+ * le démarrage sur une base qui ne le supporte pas.
+ */
+@Component
+public class ChatSearchIndexInitializer implements ApplicationListener<ApplicationReadyEvent> {
+
+    static final String INDEX_NAME = "ft_chat_messages_content";
+    static final String ARCHIVE_INDEX_NAME = "ft_chat_message_archive_texts_content";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ChatSearchIndexInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        createIndex("chat_messages", INDEX_NAME);
+        createIndex("chat_message_archive_texts", ARCHIVE_INDEX_NAME);
+    }
+
+    private void createIndex(String table, String indexName) {
+        try {
+            Integer existing = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.statistics " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?",
+                    Integer.class, table, indexName);
+            if (existing != null && existing > 0) {
+                return;
+            }
+            System.out.println("Création de l'index plein texte " + indexName + " (peut prendre du temps sur une grosse table)");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD FULLTEXT INDEX " + indexName + " (content)");
+        } catch (Exception e) {
+            System.err.println("Index plein texte " + indexName + " indisponible, la recherche dans l'historique ne fonctionnera pas: "
+                    + e.getMessage());
+        }
+    }
+}
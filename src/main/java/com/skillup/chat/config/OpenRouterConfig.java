@@ -3,10 +3,18 @@ package com.skillup.chat.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Configuration
-public class OpenRouterConfig {
+public class OpenRouterConfig implements WebMvcConfigurer {
 
     @Value("${openrouter.api.key:}")
     private String apiKey;
@@ -17,9 +25,82 @@ public class OpenRouterConfig {
     @Value("${openrouter.model:google/gemma-3n-e4b-it:free}")
     private String model;
 
+    // Modèles candidats par ordre de préférence, séparés par des virgules (par défaut : openrouter.model seul)
+    @Value("${openrouter.models:}")
+    private String models;
+
+    @Value("${openrouter.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${openrouter.http.read-timeout-ms:60000}")
+    private long readTimeoutMs;
+
+    // Threads de l'exécuteur OpenRouter. Le pool de connexions du client JDK, lui, ne se règle que par
+    // des propriétés système lues une seule fois par la JVM : options -Djdk.httpclient.connectionPoolSize
+    // et -Djdk.httpclient.keepalive.timeout au lancement (JAVA_OPTS du Dockerfile)
+    @Value("${openrouter.http.pool-size:50}")
+    private int poolSize;
+
+    @Value("${openrouter.async.timeout-ms:120000}")
+    private long asyncTimeoutMs;
+
+    @Value("${openrouter.async.pool-size:20}")
+    private int asyncPoolSize;
+
+    /**
+     * Client HTTP dédié à OpenRouter : asynchrone, HTTP/2 quand le serveur le supporte,
+     * connexions réutilisées (keep-alive) et délai de connexion borné
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public HttpClient openRouterHttpClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(openRouterExecutor())
+                .build();
+    }
+
+    /**
+     * Exécuteur des callbacks du client OpenRouter (lecture des réponses, sauvegarde des messages IA),
+     * séparé des threads de requête Tomcat
+     */
+    @Bean
+    public ThreadPoolTaskExecutor openRouterExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // Le pool ne dépasse sa taille de base que lorsque la file est pleine : la base doit donc
+        // couvrir la concurrence attendue, les threads inactifs étant libérés
+        executor.setCorePoolSize(Math.max(4, poolSize));
+        executor.setMaxPoolSize(Math.max(4, poolSize));
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("openrouter-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Exécuteur du traitement asynchrone de Spring MVC (Callable, écritures des flux SSE),
+     * distinct de celui d'OpenRouter : des réponses lentes à écrire n'y retardent pas la lecture des générations
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mvcAsyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(2, asyncPoolSize));
+        executor.setMaxPoolSize(Math.max(2, asyncPoolSize));
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // Les réponses IA sont servies en asynchrone : le délai par défaut du conteneur (30 s) est trop court
+        configurer.setDefaultTimeout(asyncTimeoutMs);
+        configurer.setTaskExecutor(mvcAsyncExecutor());
     }
 
     public String getApiKey() {
@@ -33,4 +114,21 @@ public class OpenRouterConfig {
     public String getModel() {
         return model;
     }
+
+    public List<String> getModels() {
+        List<String> candidates = Arrays.stream(models.split(","))
+                .map(String::trim)
+                .filter(candidate -> !candidate.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        return candidates.isEmpty() ? List.of(model) : candidates;
+    }
+
+    public long getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    public long getAsyncTimeoutMs() {
+        return asyncTimeoutMs;
+    }
 }
@@ -0,0 +1,41 @@
+package com.skillup.chat.controller;
+
+import com.skillup.chat.dto.AIUsageResponse;
+import com.skillup.chat.service.AIUsageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/ai-usage")
+public class AIUsageController {
+
+    private static final int MAX_DAYS = 90;
+
+    private final AIUsageService aiUsageService;
+
+    @Autowired
+    public AIUsageController(AIUsageService aiUsageService) {
+        this.aiUsageService = aiUsageService;
+    }
+
+    /**
+     * Consommation de tokens de l'utilisateur connecté : jour en cours, quotas restants et historique
+     */
+    @GetMapping
+    public ResponseEntity<AIUsageResponse> getUsage(
+            @RequestParam(defaultValue = "7") int days,
+            Authentication authentication) {
+        if (authentication == null) {
+            System.err.println("Erreur: Utilisateur non authentifié");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        int boundedDays = Math.max(1, Math.min(days, MAX_DAYS));
+        return ResponseEntity.ok(aiUsageService.getUsage(authentication.getName(), boundedDays));
+    }
+}
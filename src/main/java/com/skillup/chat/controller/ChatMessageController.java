@@ -1,34 +1,62 @@
 package com.skillup.chat.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillup.chat.client.OpenRouterException;
+import com.skillup.chat.config.OpenRouterConfig;
 import com.skillup.chat.dto.AIResponseRequest;
+import com.skillup.chat.dto.ChatExchangeResponse;
+import com.skillup.chat.dto.ChatMessagePageResponse;
 import com.skillup.chat.dto.ChatMessageRequest;
 import com.skillup.chat.dto.ChatMessageResponse;
 import com.skillup.chat.model.ChatMessage;
 import com.skillup.chat.service.AIService;
+import com.skillup.chat.service.CancellationSignal;
 import com.skillup.chat.service.ChatMessageService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/chat-sessions/{sessionId}")
 public class ChatMessageController {
 
+    // Motifs d'annulation d'une génération, repris dans la métrique ai.generation.cancelled
+    private static final String CLIENT_DISCONNECT = "client-disconnect";
+    private static final String DEADLINE = "deadline";
+
     private final ChatMessageService chatMessageService;
     private final AIService aiService;
     private final ObjectMapper objectMapper;
+    private final OpenRouterConfig openRouterConfig;
+    private final MeterRegistry meterRegistry;
+    private final long heartbeatMs;
 
     @Autowired
-    public ChatMessageController(ChatMessageService chatMessageService, AIService aiService, ObjectMapper objectMapper) {
+    public ChatMessageController(ChatMessageService chatMessageService, AIService aiService, ObjectMapper objectMapper,
+                                 OpenRouterConfig openRouterConfig, MeterRegistry meterRegistry,
+                                 @Value("${ai.stream.heartbeat-ms:5000}") long heartbeatMs) {
         this.chatMessageService = chatMessageService;
         this.aiService = aiService;
         this.objectMapper = objectMapper;
+        this.openRouterConfig = openRouterConfig;
+        this.meterRegistry = meterRegistry;
+        this.heartbeatMs = heartbeatMs;
     }
 
     @GetMapping("/messages")
@@ -43,6 +71,29 @@ public class ChatMessageController {
         return ResponseEntity.ok(responseMessages);
     }
 
+    /**
+     * Historique paginé par curseur. order=desc (par défaut) part des messages les plus récents,
+     * order=asc des plus anciens ; les messages sont renvoyés dans l'ordre de parcours.
+     */
+    @GetMapping("/messages/page")
+    public ResponseEntity<ChatMessagePageResponse> getSessionMessagesPage(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + ChatMessageService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(defaultValue = "desc") String order,
+            Authentication authentication) {
+        String userId = authentication.getName();
+        ChatMessageService.PageOrder pageOrder = "asc".equalsIgnoreCase(order)
+                ? ChatMessageService.PageOrder.OLDEST_FIRST
+                : ChatMessageService.PageOrder.NEWEST_FIRST;
+        ChatMessageService.MessagePage page = chatMessageService.getSessionMessagesPage(
+                sessionId, userId, cursor, limit, pageOrder);
+        List<ChatMessageResponse> responseMessages = page.getMessages().stream()
+                .map(this::convertToResponse)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(new ChatMessagePageResponse(responseMessages, page.getNextCursor(), page.isHasMore()));
+    }
+
     @PostMapping("/messages")
     public ResponseEntity<ChatMessageResponse> sendMessage(
             @PathVariable String sessionId,
@@ -73,36 +124,195 @@ public class ChatMessageController {
         }
     }
 
+    /**
+     * Réponse asynchrone : le thread Tomcat est libéré pendant l'appel à OpenRouter
+     * et la réponse est écrite à la complétion du futur. Si le client se déconnecte ou si le délai
+     * est dépassé, la génération est annulée et rien n'est enregistré.
+     */
     @PostMapping("/ai-response")
-    public ResponseEntity<ChatMessageResponse> getAIResponse(
+    public DeferredResult<ResponseEntity<ChatMessageResponse>> getAIResponse(
             @PathVariable String sessionId,
             @RequestBody AIResponseRequest request,
             Authentication authentication) {
-        try {
-            System.out.println("Requête AI reçue - SessionID: " + sessionId);
-            
-            // Vérifier si messageId est fourni
-            if (request.getMessageId() == null || request.getMessageId().isEmpty()) {
-                System.err.println("Erreur: messageId est requis pour générer une réponse IA");
-                throw new IllegalArgumentException("messageId est requis pour générer une réponse IA");
+        if (request.getMessageId() == null || request.getMessageId().isEmpty()) {
+            throw new IllegalArgumentException("messageId est requis pour générer une réponse IA");
+        }
+        
+        String userId = authentication.getName();
+        CancellationSignal cancellation = new CancellationSignal();
+        // Les refus synchrones (quota, admission) remontent tels quels au gestionnaire global : 429 avec Retry-After
+        return toDeferredResult(cancellation, aiService.generateAIResponse(sessionId, request, userId, cancellation)
+                .thenApply(aiResponse -> ResponseEntity.ok(convertToResponse(aiResponse))));
+    }
+    
+    /**
+     * Variante streaming de /ai-response : les fragments générés sont envoyés au fur et à mesure
+     * sous forme d'événements SSE "token", puis un événement "done" contient le message sauvegardé
+     */
+    @PostMapping(value = "/ai-response/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAIResponse(
+            @PathVariable String sessionId,
+            @RequestBody AIResponseRequest request,
+            Authentication authentication) {
+        if (request.getMessageId() == null || request.getMessageId().isEmpty()) {
+            throw new IllegalArgumentException("messageId est requis pour générer une réponse IA");
+        }
+        
+        String userId = authentication.getName();
+        SseEmitter emitter = new SseEmitter(openRouterConfig.getAsyncTimeoutMs());
+        CancellationSignal cancellation = new CancellationSignal();
+        
+        streamTo(emitter, cancellation, aiService.streamAIResponse(sessionId, request, userId, cancellation,
+                token -> sendEvent(emitter, cancellation, "token", Map.of("content", token))));
+        
+        return emitter;
+    }
+    
+    /**
+     * Envoi du message utilisateur et réponse de l'IA en un seul aller-retour :
+     * la session et l'historique chargés pour l'enregistrement du message servent directement à la génération
+     */
+    @PostMapping("/exchange")
+    public DeferredResult<ResponseEntity<ChatExchangeResponse>> exchange(
+            @PathVariable String sessionId,
+            @RequestBody ChatMessageRequest request,
+            Authentication authentication) {
+        String userId = authentication.getName();
+        AtomicReference<ChatMessageResponse> userMessage = new AtomicReference<>();
+        CancellationSignal cancellation = new CancellationSignal();
+        
+        return toDeferredResult(cancellation, aiService.exchange(sessionId, request, userId, cancellation,
+                        message -> userMessage.set(convertToResponse(message)))
+                .thenApply(aiResponse -> ResponseEntity.ok(
+                        new ChatExchangeResponse(userMessage.get(), convertToResponse(aiResponse)))));
+    }
+    
+    /**
+     * Variante streaming de /exchange : un événement "message" contient le message utilisateur enregistré,
+     * suivi des événements "token" puis "done" comme pour /ai-response/stream
+     */
+    @PostMapping(value = "/exchange/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamExchange(
+            @PathVariable String sessionId,
+            @RequestBody ChatMessageRequest request,
+            Authentication authentication) {
+        String userId = authentication.getName();
+        SseEmitter emitter = new SseEmitter(openRouterConfig.getAsyncTimeoutMs());
+        CancellationSignal cancellation = new CancellationSignal();
+        
+        streamTo(emitter, cancellation, aiService.streamExchange(sessionId, request, userId, cancellation,
+                message -> sendEvent(emitter, cancellation, "message", convertToResponse(message)),
+                token -> sendEvent(emitter, cancellation, "token", Map.of("content", token))));
+        return emitter;
+    }
+    
+    /**
+     * Relie la génération au cycle de vie de la requête : délai dépassé ou erreur d'écriture
+     * (client déconnecté) annulent la génération au lieu de la laisser aller à son terme
+     */
+    private <T> DeferredResult<ResponseEntity<T>> toDeferredResult(CancellationSignal cancellation,
+                                                                   CompletableFuture<ResponseEntity<T>> generation) {
+        DeferredResult<ResponseEntity<T>> result = new DeferredResult<>(openRouterConfig.getAsyncTimeoutMs());
+        result.onTimeout(() -> {
+            // La réponse est fixée avant l'annulation, qui fait échouer le futur de façon synchrone
+            result.setErrorResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .body(Map.of("error", "La génération de la réponse a dépassé le délai autorisé")));
+            cancel(cancellation, generation, DEADLINE);
+        });
+        result.onError(ex -> cancel(cancellation, generation, CLIENT_DISCONNECT));
+        generation.whenComplete((response, ex) -> {
+            if (ex != null) {
+                result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            } else {
+                result.setResult(response);
             }
-            
-            System.out.println("MessageID: " + request.getMessageId());
-            
-            String userId = authentication.getName();
-            System.out.println("UserID: " + userId);
-            
-            ChatMessage aiResponse = aiService.generateAIResponse(sessionId, request, userId);
-            return ResponseEntity.ok(convertToResponse(aiResponse));
-        } catch (Exception e) {
-            System.err.println("Erreur lors de la génération de la réponse IA: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Erreur lors de la génération de la réponse IA", e);
+        });
+        return result;
+    }
+    
+    /**
+     * Annule la génération si elle est encore en cours ; seules ces annulations sont comptées
+     */
+    private void cancel(CancellationSignal cancellation, CompletableFuture<?> generation, String reason) {
+        if ((generation == null || !generation.isDone()) && cancellation.cancel(reason)) {
+            System.out.println("Génération IA annulée: " + reason);
+            meterRegistry.counter("ai.generation.cancelled", "reason", reason).increment();
+        }
+    }
+    
+    private void sendEvent(SseEmitter emitter, CancellationSignal cancellation, String name, Object data) {
+        if (cancellation.isCancelled()) {
+            return;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // Le client s'est déconnecté : seul cet appelant abandonne, sans faire échouer le flux en amont,
+            // qu'une génération partagée poursuit pour ses autres appelants
+            cancel(cancellation, null, CLIENT_DISCONNECT);
         }
     }
     
     /**
-     * Convertit un ChatMessage en ChatMessageResponse avec les métadonnées désérialisées
+     * Une déconnexion n'est détectée qu'à l'écriture : un commentaire SSE périodique la révèle
+     * pendant l'attente en file ou avant le premier fragment
+     */
+    private void keepAlive(SseEmitter emitter, CancellationSignal cancellation, CompletableFuture<?> generation) {
+        if (heartbeatMs <= 0) {
+            return;
+        }
+        CompletableFuture.delayedExecutor(heartbeatMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (generation.isDone() || cancellation.isCancelled()) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().comment("keep-alive"));
+                keepAlive(emitter, cancellation, generation);
+            } catch (IOException | IllegalStateException e) {
+                cancel(cancellation, generation, CLIENT_DISCONNECT);
+            }
+        });
+    }
+    
+    private void streamTo(SseEmitter emitter, CancellationSignal cancellation, CompletableFuture<ChatMessage> aiResponseFuture) {
+        emitter.onTimeout(() -> {
+            cancel(cancellation, aiResponseFuture, DEADLINE);
+            emitter.complete();
+        });
+        emitter.onError(ex -> cancel(cancellation, aiResponseFuture, CLIENT_DISCONNECT));
+        keepAlive(emitter, cancellation, aiResponseFuture);
+        aiResponseFuture.whenComplete((aiResponse, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                System.err.println("Erreur lors du streaming de la réponse IA: " + cause.getMessage());
+                // Le flux est déjà ouvert : l'erreur est transmise comme un événement, rien n'est enregistré
+                try {
+                    emitter.send(SseEmitter.event().name("error").data(Map.of("error", String.valueOf(cause.getMessage()))));
+                    emitter.complete();
+                } catch (IOException e) {
+                    emitter.completeWithError(cause);
+                }
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name("done").data(convertToResponse(aiResponse)));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        });
+    }
+    
+    /**
+     * Aucun modèle n'a pu répondre : l'échec est renvoyé au client au lieu d'être enregistré dans la conversation
+     */
+    @ExceptionHandler(OpenRouterException.class)
+    public ResponseEntity<Map<String, String>> handleOpenRouterException(OpenRouterException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", ex.getMessage()));
+    }
+    
+    /**
+     * Convertit un ChatMessage en ChatMessageResponse
      */
     private ChatMessageResponse convertToResponse(ChatMessage message) {
         ChatMessageResponse response = new ChatMessageResponse();
@@ -112,15 +322,13 @@ public class ChatMessageController {
         response.setRole(message.getRole().name());
         response.setTimestamp(message.getTimestamp());
         response.setType(message.getMessageType());
+        response.setModel(message.getModel());
+        response.setPromptTokens(message.getPromptTokens());
+        response.setCompletionTokens(message.getCompletionTokens());
         
-        // Désérialiser les métadonnées si elles existent
+        // Les métadonnées sont du JSON validé par la base : transmises sans être désérialisées
         if (message.getMetadata() != null && !message.getMetadata().isEmpty()) {
-            try {
-                response.setMetadata(objectMapper.readValue(message.getMetadata(), Object.class));
-            } catch (JsonProcessingException e) {
-                // En cas d'erreur, laisser les métadonnées à null
-                System.out.println("Erreur lors de la désérialisation des métadonnées: " + e.getMessage());
-            }
+            response.setMetadata(message.getMetadata());
         }
         
         return response;
@@ -1,14 +1,15 @@
 package com.skillup.chat.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.skillup.chat.dto.ChatMessageRequest;
 import com.skillup.chat.dto.ChatMessageResponse;
+import com.skillup.chat.dto.ChatSearchResponse;
 import com.skillup.chat.dto.ChatSessionRequest;
 import com.skillup.chat.dto.ChatSessionResponse;
+import com.skillup.chat.dto.ChatSessionSummaryResponse;
 import com.skillup.chat.model.ChatMessage;
 import com.skillup.chat.model.ChatSession;
 import com.skillup.chat.service.ChatMessageService;
+import com.skillup.chat.service.ChatSearchService;
 import com.skillup.chat.service.ChatSessionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -17,27 +18,27 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/chat-sessions")
 public class ChatSessionController {
 
     private final ChatSessionService chatSessionService;
-    private final ObjectMapper objectMapper;
 
     private final ChatMessageService chatMessageService;
+    private final ChatSearchService chatSearchService;
     
     @Autowired
     public ChatSessionController(ChatSessionService chatSessionService, 
                                  ChatMessageService chatMessageService,
-                                 ObjectMapper objectMapper) {
+                                 ChatSearchService chatSearchService) {
         this.chatSessionService = chatSessionService;
         this.chatMessageService = chatMessageService;
-        this.objectMapper = objectMapper;
+        this.chatSearchService = chatSearchService;
     }
 
     @PostMapping
@@ -84,7 +85,7 @@ public class ChatSessionController {
                 chatSession = chatSessionService.refreshChatSession(chatSession.getId());
             }
             
-            ChatSessionResponse response = convertToResponse(chatSession);
+            ChatSessionResponse response = convertToResponse(chatSession, chatSession.getMessages());
             System.out.println("Réponse préparée avec l'ID: " + response.getId());
             
             return ResponseEntity.ok(response);
@@ -95,24 +96,42 @@ public class ChatSessionController {
         }
     }
 
+    /**
+     * Recherche dans tous les messages de l'utilisateur, par pertinence
+     */
+    @GetMapping("/search")
+    public ResponseEntity<ChatSearchResponse> searchMessages(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        String userId = authentication.getName();
+        return ResponseEntity.ok(chatSearchService.search(userId, q, page, size));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ChatSessionResponse> getChatSession(
             @PathVariable String id,
             Authentication authentication) {
         String userId = authentication.getName();
         ChatSession chatSession = chatSessionService.getChatSessionById(id, userId);
-        ChatSessionResponse response = convertToResponse(chatSession);
+        
+        // N'inclure que la dernière page de messages, dans l'ordre chronologique
+        ChatMessageService.MessagePage lastPage = chatMessageService.findMessagesPage(
+                chatSession, null, ChatMessageService.DEFAULT_PAGE_SIZE, ChatMessageService.PageOrder.NEWEST_FIRST);
+        List<ChatMessage> messages = new ArrayList<>(lastPage.getMessages());
+        Collections.reverse(messages);
+        
+        ChatSessionResponse response = convertToResponse(chatSession, messages);
+        response.setNextCursor(lastPage.getNextCursor());
+        response.setHasMoreMessages(lastPage.isHasMore());
         return ResponseEntity.ok(response);
     }
 
     @GetMapping
-    public ResponseEntity<List<ChatSessionResponse>> getUserChatSessions(Authentication authentication) {
+    public ResponseEntity<List<ChatSessionSummaryResponse>> getUserChatSessions(Authentication authentication) {
         String userId = authentication.getName();
-        List<ChatSession> chatSessions = chatSessionService.getUserChatSessions(userId);
-        List<ChatSessionResponse> responses = chatSessions.stream()
-                .map(this::convertToResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(responses);
+        return ResponseEntity.ok(chatSessionService.getUserChatSessionSummaries(userId));
     }
 
     @DeleteMapping("/{id}")
@@ -130,7 +149,7 @@ public class ChatSessionController {
     /**
      * Convertit un ChatSession en ChatSessionResponse avec les messages et leurs métadonnées
      */
-    private ChatSessionResponse convertToResponse(ChatSession session) {
+    private ChatSessionResponse convertToResponse(ChatSession session, List<ChatMessage> messages) {
         ChatSessionResponse response = new ChatSessionResponse();
         response.setId(session.getId());
         response.setTitle(session.getTitle());
@@ -141,8 +160,8 @@ public class ChatSessionController {
         List<ChatMessageResponse> messageResponses = new ArrayList<>();
         
         // Vérifier si la liste des messages est null
-        if (session.getMessages() != null) {
-            for (ChatMessage message : session.getMessages()) {
+        if (messages != null) {
+            for (ChatMessage message : messages) {
             ChatMessageResponse messageResponse = new ChatMessageResponse();
             messageResponse.setId(message.getId());
             messageResponse.setSessionId(session.getId());
@@ -150,15 +169,13 @@ public class ChatSessionController {
             messageResponse.setRole(message.getRole().name());
             messageResponse.setTimestamp(message.getTimestamp());
             messageResponse.setType(message.getMessageType());
+            messageResponse.setModel(message.getModel());
+            messageResponse.setPromptTokens(message.getPromptTokens());
+            messageResponse.setCompletionTokens(message.getCompletionTokens());
             
-            // Désérialiser les métadonnées si elles existent
+            // Les métadonnées sont du JSON validé par la base : transmises sans être désérialisées
             if (message.getMetadata() != null && !message.getMetadata().isEmpty()) {
-                try {
-                    messageResponse.setMetadata(objectMapper.readValue(message.getMetadata(), Object.class));
-                } catch (JsonProcessingException e) {
-                    // En cas d'erreur, laisser les métadonnées à null
-                    System.out.println("Erreur lors de la désérialisation des métadonnées: " + e.getMessage());
-                }
+                messageResponse.setMetadata(message.getMetadata());
             }
             
             messageResponses.add(messageResponse);
@@ -0,0 +1,37 @@
+package com.skillup.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Consommation IA de l'utilisateur : quotas absents lorsqu'ils sont illimités
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AIUsageResponse {
+    private DailyUsage today;
+    private Long dailyTokenQuota;
+    private Long remainingTokens;
+    private Long dailyRequestQuota;
+    private Long remainingRequests;
+    private Instant resetsAt;
+    private List<DailyUsage> history;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DailyUsage {
+        private LocalDate date;
+        private long requests;
+        private long promptTokens;
+        private long completionTokens;
+        private long totalTokens;
+    }
+}
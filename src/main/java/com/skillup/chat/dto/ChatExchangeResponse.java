@@ -0,0 +1,13 @@
+package com.skillup.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatExchangeResponse {
+    private ChatMessageResponse userMessage;
+    private ChatMessageResponse assistantMessage;
+}
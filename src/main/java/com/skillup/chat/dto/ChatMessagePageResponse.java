@@ -0,0 +1,19 @@
+package com.skillup.chat.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatMessagePageResponse {
+    private List<ChatMessageResponse> messages = new ArrayList<>();
+    private String nextCursor; // à renvoyer dans "cursor" pour obtenir la page suivante
+    private boolean hasMore;
+}
@@ -1,6 +1,7 @@
 package com.skillup.chat.dto;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -18,5 +19,10 @@ public class ChatMessageResponse {
     private String role;
     private Instant timestamp;
     private String type;
-    private Object metadata;
+    // Texte JSON de la base écrit directement dans la réponse, sans désérialisation intermédiaire
+    @JsonRawValue
+    private String metadata;
+    private String model;
+    private Integer promptTokens;
+    private Integer completionTokens;
 }
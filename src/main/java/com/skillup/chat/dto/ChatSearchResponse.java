@@ -0,0 +1,33 @@
+package com.skillup.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSearchResponse {
+    private String query;
+    private int page;
+    private int size;
+    private boolean hasMore;
+    private List<Hit> results = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Hit {
+        private String sessionId;
+        private String sessionTitle;
+        private String messageId;
+        private String role;
+        private Instant timestamp;
+        private double score;
+        private String snippet; // extrait échappé en HTML, termes trouvés entourés de <mark></mark>
+    }
+}
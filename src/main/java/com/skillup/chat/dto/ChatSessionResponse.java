@@ -19,4 +19,7 @@ public class ChatSessionResponse {
     private Instant createdAt;
     private Instant updatedAt;
     private List<ChatMessageResponse> messages = new ArrayList<>();
+    // Seule la dernière page de messages est incluse : curseur pour charger les précédents
+    private String nextCursor;
+    private Boolean hasMoreMessages;
 }
@@ -0,0 +1,22 @@
+package com.skillup.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Entrée de la liste des sessions : calculée par une seule requête d'agrégat, sans charger les messages
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSessionSummaryResponse {
+    private String id;
+    private String title;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private long messageCount;
+    private String lastMessagePreview;
+}
@@ -0,0 +1,256 @@
+package com.skillup.chat.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Test de charge de bout en bout du chat, actif avec le profil "loadtest" (à combiner avec
+ * "openrouter-stub" pour ne consommer aucun token) :
+ *
+ *   --spring.profiles.active=openrouter-stub,loadtest --openrouter.api.url=http://localhost:8080/openrouter-stub
+ *
+ * Une fois l'application démarrée, des utilisateurs de test sont inscrits puis loadtest.concurrency clients
+ * enchaînent des POST /chat-sessions/{id}/exchange (ou /exchange/stream) pendant loadtest.duration-seconds.
+ * Le rapport donne le débit, les percentiles de latence, la répartition des statuts, la saturation du pool
+ * JDBC, de l'exécuteur OpenRouter et le nombre de threads de la JVM.
+ */
+@Component
+@Profile("loadtest")
+public class ChatLoadTestRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final ObjectMapper objectMapper;
+    private final DataSource dataSource;
+    private final ThreadPoolTaskExecutor openRouterExecutor;
+    private final ApplicationContext applicationContext;
+
+    @Value("${loadtest.base-url:http://localhost:${server.port:8080}}")
+    private String baseUrl;
+
+    @Value("${loadtest.users:20}")
+    private int userCount;
+
+    @Value("${loadtest.concurrency:50}")
+    private int concurrency;
+
+    @Value("${loadtest.duration-seconds:60}")
+    private int durationSeconds;
+
+    @Value("${loadtest.streaming:false}")
+    private boolean streaming;
+
+    @Value("${loadtest.exit-on-finish:true}")
+    private boolean exitOnFinish;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @Autowired
+    public ChatLoadTestRunner(ObjectMapper objectMapper, DataSource dataSource,
+                              @Qualifier("openRouterExecutor") ThreadPoolTaskExecutor openRouterExecutor,
+                              ApplicationContext applicationContext) {
+        this.objectMapper = objectMapper;
+        this.dataSource = dataSource;
+        this.openRouterExecutor = openRouterExecutor;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Thread runner = new Thread(this::run, "chat-loadtest");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    private void run() {
+        try {
+            System.out.println("Test de charge : préparation de " + userCount + " utilisateurs sur " + baseUrl);
+            List<VirtualUser> users = prepareUsers();
+            Report report = drive(users);
+            report.print(streaming, concurrency, durationSeconds);
+        } catch (Exception e) {
+            System.err.println("Test de charge interrompu: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (exitOnFinish) {
+                System.exit(SpringApplication.exit(applicationContext, () -> 0));
+            }
+        }
+    }
+
+    private List<VirtualUser> prepareUsers() throws Exception {
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        List<VirtualUser> users = new ArrayList<>();
+        for (int i = 0; i < userCount; i++) {
+            JsonNode auth = post("/auth/register", null, Map.of(
+                    "name", "Charge " + i,
+                    "email", "loadtest-" + runId + "-" + i + "@skillup.local",
+                    "password", "loadtest-" + runId));
+            String token = auth.path("token").asText();
+            JsonNode session = post("/chat-sessions", token, Map.of("title", "Test de charge " + i));
+            users.add(new VirtualUser(token, session.path("id").asText()));
+        }
+        return users;
+    }
+
+    private Report drive(List<VirtualUser> users) throws InterruptedException {
+        Report report = new Report();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(report::sample, 0, 200, TimeUnit.MILLISECONDS);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        AtomicInteger sequence = new AtomicInteger();
+        long startedAt = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            VirtualUser user = users.get(c % users.size());
+            clients.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    String path = "/chat-sessions/" + user.sessionId() + (streaming ? "/exchange/stream" : "/exchange");
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                            .timeout(Duration.ofMinutes(3))
+                            .header("Content-Type", "application/json")
+                            .header("Authorization", "Bearer " + user.token())
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    "{\"content\":\"Message de charge " + sequence.incrementAndGet() + "\",\"type\":\"text\"}"))
+                            .build();
+                    long requestStart = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                        // En SSE, un échec de génération arrive dans un flux au statut 200
+                        String outcome = streaming && response.statusCode() == 200 && response.body().contains("event:error")
+                                ? "erreur SSE"
+                                : String.valueOf(response.statusCode());
+                        report.record(outcome, System.nanoTime() - requestStart);
+                    } catch (Exception e) {
+                        report.record("erreur réseau", System.nanoTime() - requestStart);
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(durationSeconds + 300L, TimeUnit.SECONDS);
+        report.elapsedNanos = System.nanoTime() - startedAt;
+        sampler.shutdownNow();
+        return report;
+    }
+
+    private JsonNode post(String path, String token, Object body) throws Exception {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException(path + " a répondu " + response.statusCode() + ": " + response.body());
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    private record VirtualUser(String token, String sessionId) {
+    }
+
+    /**
+     * Mesures collectées pendant le test : latences par requête et échantillons périodiques des ressources
+     */
+    private class Report {
+        private final List<Long> latencies = new ArrayList<>();
+        private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private long elapsedNanos;
+
+        private int maxPoolActive;
+        private int maxPoolPending;
+        private int poolSize;
+        private int maxExecutorActive;
+        private int maxExecutorQueue;
+        private int maxThreads;
+
+        synchronized void record(String status, long latencyNanos) {
+            latencies.add(latencyNanos);
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        synchronized void sample() {
+            try {
+                HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+                if (pool != null) {
+                    maxPoolActive = Math.max(maxPoolActive, pool.getActiveConnections());
+                    maxPoolPending = Math.max(maxPoolPending, pool.getThreadsAwaitingConnection());
+                    poolSize = Math.max(poolSize, pool.getTotalConnections());
+                }
+            } catch (Exception e) {
+                // Pool autre que Hikari : pas de mesure de saturation
+            }
+            maxExecutorActive = Math.max(maxExecutorActive, openRouterExecutor.getActiveCount());
+            maxExecutorQueue = Math.max(maxExecutorQueue, openRouterExecutor.getQueueSize());
+            maxThreads = Math.max(maxThreads, threads.getThreadCount());
+        }
+
+        synchronized void print(boolean streaming, int concurrency, int durationSeconds) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            long ok = statuses.getOrDefault("200", new LongAdder()).sum();
+
+            System.out.println("===== Test de charge du chat (" + (streaming ? "/exchange/stream" : "/exchange") + ") =====");
+            System.out.println("Clients simultanés : " + concurrency + ", durée : " + durationSeconds + " s");
+            System.out.println("Requêtes : " + sorted.length + " en " + String.format("%.1f", seconds) + " s");
+            System.out.println("Débit : " + String.format("%.1f", sorted.length / seconds) + " req/s, dont "
+                    + String.format("%.1f", ok / seconds) + " réussies/s");
+            System.out.println("Statuts : " + new TreeMap<>(statuses));
+            if (sorted.length > 0) {
+                System.out.println("Latence (ms) : p50=" + percentileMs(sorted, 0.50) + " p90=" + percentileMs(sorted, 0.90)
+                        + " p95=" + percentileMs(sorted, 0.95) + " p99=" + percentileMs(sorted, 0.99)
+                        + " max=" + sorted[sorted.length - 1] / 1_000_000);
+            }
+            System.out.println("Pool JDBC : " + maxPoolActive + "/" + poolSize + " connexions actives au maximum, "
+                    + maxPoolPending + " threads en attente au maximum");
+            System.out.println("Exécuteur OpenRouter : " + maxExecutorActive + " threads actifs au maximum, file max "
+                    + maxExecutorQueue);
+            System.out.println("Threads JVM : " + maxThreads + " au maximum (pic depuis le démarrage : "
+                    + threads.getPeakThreadCount() + ")");
+        }
+
+        private long percentileMs(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1_000_000;
+        }
+    }
+}
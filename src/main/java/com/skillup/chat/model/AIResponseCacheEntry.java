@@ -0,0 +1,44 @@
+package com.skillup.chat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Réponse IA mémorisée pour une action sur une note (résumé, révision, quiz),
+ * indexée par l'empreinte SHA-256 de (action, modèle, titre, contenu)
+ */
+@Entity
+@Table(name = "ai_response_cache")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIResponseCacheEntry {
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    @Column(name = "action", nullable = false)
+    private String action;
+
+    @Column(name = "model", nullable = false)
+    private String model;
+
+    @Column(name = "content", columnDefinition = "TEXT", nullable = false)
+    private String content;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+    }
+}
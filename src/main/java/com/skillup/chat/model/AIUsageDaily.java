@@ -0,0 +1,48 @@
+package com.skillup.chat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Consommation IA d'un utilisateur sur une journée (UTC) : nombre de générations et tokens facturés
+ * par OpenRouter. Les compteurs sont agrégés en mémoire puis reportés périodiquement (AIUsageService).
+ */
+@Entity
+@Table(name = "ai_usage_daily")
+@IdClass(AIUsageDaily.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AIUsageDaily {
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Id
+    @Column(name = "usage_date")
+    private LocalDate usageDate;
+
+    @Column(name = "requests", nullable = false)
+    private long requests;
+
+    @Column(name = "prompt_tokens", nullable = false)
+    private long promptTokens;
+
+    @Column(name = "completion_tokens", nullable = false)
+    private long completionTokens;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String userId;
+        private LocalDate usageDate;
+    }
+}
@@ -7,12 +7,17 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        // Pagination par curseur (timestamp, id) à l'intérieur d'une session
+        @Index(name = "idx_chat_messages_session_ts_id", columnList = "session_id, timestamp, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -40,9 +45,20 @@ public class ChatMessage {
     @Column(name = "message_type")
     private String messageType; // text, note, note-list
     
-    @Column(name = "metadata", columnDefinition = "TEXT")
+    // Colonne JSON native : le texte est validé par la base et renvoyé tel quel aux clients (@JsonRawValue)
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "metadata", columnDefinition = "json")
     private String metadata; // JSON string containing metadata
 
+    @Column(name = "model")
+    private String model; // modèle qui a produit la réponse (messages de l'assistant)
+
+    @Column(name = "prompt_tokens")
+    private Integer promptTokens; // tokens facturés pour la réponse (absents si servie depuis le cache)
+
+    @Column(name = "completion_tokens")
+    private Integer completionTokens;
+
     @PrePersist
     public void prePersist() {
         if (id == null) {
@@ -0,0 +1,52 @@
+package com.skillup.chat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Bloc de messages archivés d'une session inactive : JSON compressé (gzip) d'au plus
+ * chat.archive.chunk-messages messages consécutifs, sorti de chat_messages par ChatArchiveService
+ */
+@Entity
+@Table(name = "chat_message_archives")
+@IdClass(ChatMessageArchive.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageArchive {
+    @Id
+    @Column(name = "session_id")
+    private String sessionId;
+
+    @Id
+    @Column(name = "chunk_index")
+    private int chunkIndex;
+
+    @Column(name = "message_count", nullable = false)
+    private int messageCount;
+
+    @Column(name = "first_timestamp", nullable = false)
+    private Instant firstTimestamp;
+
+    @Column(name = "last_timestamp", nullable = false)
+    private Instant lastTimestamp;
+
+    @Lob
+    @Column(name = "payload", columnDefinition = "LONGBLOB", nullable = false)
+    private byte[] payload;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String sessionId;
+        private int chunkIndex;
+    }
+}
@@ -0,0 +1,56 @@
+package com.skillup.chat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Extrait d'un message archivé (ses chat.archive.search-excerpt-chars premiers caractères), gardé en clair
+ * pour la recherche dans l'historique : les blocs compressés de chat_message_archives ne sont pas
+ * interrogeables. Écrit avec les blocs par ChatArchiveService, indexé en plein texte par
+ * ChatSearchIndexInitializer.
+ */
+@Entity
+@Table(name = "chat_message_archive_texts", indexes = {
+        @Index(name = "idx_chat_message_archive_texts_session", columnList = "session_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageArchiveText implements Persistable<String> {
+    @Id
+    @Column(name = "message_id")
+    private String messageId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "session_id", nullable = false)
+    private ChatSession chatSession;
+
+    @Column(name = "role", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ChatMessage.MessageRole role;
+
+    // Extrait borné : seul le texte complet des blocs compressés pèse sur le stockage
+    @Column(name = "content", columnDefinition = "TEXT", nullable = false)
+    private String content;
+
+    @Column(name = "timestamp", nullable = false)
+    private Instant timestamp;
+
+    @Override
+    public String getId() {
+        return messageId;
+    }
+
+    // Écrit une seule fois à l'archivage, jamais modifié : save() insère sans SELECT préalable
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -35,7 +35,31 @@ public class ChatSession {
     @Column(name = "user_id", nullable = false)
     private String userId;
 
+    // Résumé glissant des messages sortis de la fenêtre de contexte de l'IA
+    @Column(name = "context_summary", columnDefinition = "TEXT")
+    private String contextSummary;
+
+    // Dernier message intégré au résumé, repéré par (horodatage, id) comme les curseurs de pagination :
+    // seuls les messages suivants sont rechargés, y compris ceux de même horodatage
+    @Column(name = "summarized_until")
+    private Instant summarizedUntil;
+
+    @Column(name = "summarized_until_id")
+    private String summarizedUntilId;
+
+    // Archivage des messages anciens (ChatArchiveService) : date du premier archivage, nombre de messages
+    // sortis de chat_messages et aperçu du dernier d'entre eux pour la liste des sessions
+    @Column(name = "archived_at")
+    private Instant archivedAt;
+
+    @Column(name = "archived_message_count")
+    private Integer archivedMessageCount;
+
+    @Column(name = "archived_preview", length = 120)
+    private String archivedPreview;
+
     @OneToMany(mappedBy = "chatSession", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @OrderBy("timestamp ASC")
     @JsonManagedReference
     private List<ChatMessage> messages = new ArrayList<>();
 
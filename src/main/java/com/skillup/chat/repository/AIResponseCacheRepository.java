@@ -0,0 +1,9 @@
+package com.skillup.chat.repository;
+
+import com.skillup.chat.model.AIResponseCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AIResponseCacheRepository extends JpaRepository<AIResponseCacheEntry, String> {
+}
@@ -0,0 +1,33 @@
+package com.skillup.chat.repository;
+
+import com.skillup.chat.model.AIUsageDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface AIUsageDailyRepository extends JpaRepository<AIUsageDaily, AIUsageDaily.Key> {
+
+    List<AIUsageDaily> findByUserIdAndUsageDateGreaterThanEqualOrderByUsageDateDesc(String userId, LocalDate from);
+
+    /**
+     * Ajoute des compteurs à la ligne du jour en une seule instruction, sans lecture préalable :
+     * plusieurs instances peuvent reporter leurs deltas pour le même utilisateur sans se marcher dessus
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO ai_usage_daily (user_id, usage_date, requests, prompt_tokens, completion_tokens) " +
+            "VALUES (:userId, :usageDate, :requests, :promptTokens, :completionTokens) " +
+            "ON DUPLICATE KEY UPDATE requests = requests + VALUES(requests), " +
+            "prompt_tokens = prompt_tokens + VALUES(prompt_tokens), " +
+            "completion_tokens = completion_tokens + VALUES(completion_tokens)", nativeQuery = true)
+    void addUsage(@Param("userId") String userId, @Param("usageDate") LocalDate usageDate,
+                  @Param("requests") long requests, @Param("promptTokens") long promptTokens,
+                  @Param("completionTokens") long completionTokens);
+}
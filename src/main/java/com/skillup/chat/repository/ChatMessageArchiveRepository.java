@@ -0,0 +1,39 @@
+package com.skillup.chat.repository;
+
+import com.skillup.chat.model.ChatMessageArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ChatMessageArchiveRepository extends JpaRepository<ChatMessageArchive, ChatMessageArchive.Key> {
+    List<ChatMessageArchive> findBySessionIdOrderByChunkIndexAsc(String sessionId);
+
+    // Blocs qui se terminent au plus tôt à l'horodatage donné : les précédents sont entièrement antérieurs
+    List<ChatMessageArchive> findBySessionIdAndLastTimestampGreaterThanEqualOrderByChunkIndexAsc(String sessionId, Instant from);
+
+    // Numéros des blocs seulement, pour ne charger ensuite que les blocs nécessaires à une page
+
+    @Query("select a.chunkIndex from ChatMessageArchive a where a.sessionId = :sessionId order by a.chunkIndex asc")
+    List<Integer> findChunkIndexes(@Param("sessionId") String sessionId);
+
+    @Query("select a.chunkIndex from ChatMessageArchive a where a.sessionId = :sessionId " +
+           "and a.lastTimestamp >= :timestamp order by a.chunkIndex asc")
+    List<Integer> findChunkIndexesEndingFrom(@Param("sessionId") String sessionId, @Param("timestamp") Instant timestamp);
+
+    @Query("select a.chunkIndex from ChatMessageArchive a where a.sessionId = :sessionId " +
+           "and a.firstTimestamp <= :timestamp order by a.chunkIndex desc")
+    List<Integer> findChunkIndexesStartingUntil(@Param("sessionId") String sessionId, @Param("timestamp") Instant timestamp);
+
+    @Query("select coalesce(max(a.chunkIndex), -1) from ChatMessageArchive a where a.sessionId = :sessionId")
+    int findLastChunkIndex(@Param("sessionId") String sessionId);
+
+    @Modifying
+    @Query("delete from ChatMessageArchive a where a.sessionId = :sessionId")
+    void deleteBySessionId(@Param("sessionId") String sessionId);
+}
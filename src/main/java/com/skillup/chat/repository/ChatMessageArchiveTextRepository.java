@@ -0,0 +1,20 @@
+package com.skillup.chat.repository;
+
+import com.skillup.chat.model.ChatMessageArchiveText;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ChatMessageArchiveTextRepository extends JpaRepository<ChatMessageArchiveText, String> {
+    @Query("select t from ChatMessageArchiveText t join fetch t.chatSession where t.messageId in :ids")
+    List<ChatMessageArchiveText> findWithSessionByMessageIdIn(@Param("ids") List<String> ids);
+
+    @Modifying
+    @Query("delete from ChatMessageArchiveText t where t.chatSession.id = :sessionId")
+    void deleteBySessionId(@Param("sessionId") String sessionId);
+}
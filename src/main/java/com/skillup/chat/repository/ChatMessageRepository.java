@@ -1,12 +1,71 @@
 package com.skillup.chat.repository;
 
 import com.skillup.chat.model.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, String> {
-    List<ChatMessage> findByChatSessionIdOrderByTimestampAsc(String sessionId);
+    // Ordre (timestamp, id) : celui des curseurs de pagination et du filigrane du résumé glissant
+    List<ChatMessage> findByChatSessionIdOrderByTimestampAscIdAsc(String sessionId);
+
+    // Messages postérieurs au filigrane (timestamp, id) du résumé glissant
+    @Query("select m from ChatMessage m where m.chatSession.id = :sessionId " +
+           "and (m.timestamp > :timestamp or (m.timestamp = :timestamp and m.id > :id)) " +
+           "order by m.timestamp asc, m.id asc")
+    List<ChatMessage> findAfterWatermark(@Param("sessionId") String sessionId, @Param("timestamp") Instant timestamp,
+                                         @Param("id") String id);
+
+    // Messages à archiver : seuls ceux antérieurs au seuil, un message arrivé entre-temps reste en place
+    @Query("select m from ChatMessage m where m.chatSession.id = :sessionId and m.timestamp < :cutoff " +
+           "order by m.timestamp asc, m.id asc")
+    List<ChatMessage> findArchivable(@Param("sessionId") String sessionId, @Param("cutoff") Instant cutoff);
+
+    // Pagination par curseur sur (timestamp, id), servie par l'index idx_chat_messages_session_ts_id
+
+    @Query("select m from ChatMessage m where m.chatSession.id = :sessionId " +
+           "order by m.timestamp desc, m.id desc")
+    List<ChatMessage> findNewest(@Param("sessionId") String sessionId, Pageable pageable);
+
+    @Query("select m from ChatMessage m where m.chatSession.id = :sessionId " +
+           "and (m.timestamp < :timestamp or (m.timestamp = :timestamp and m.id < :id)) " +
+           "order by m.timestamp desc, m.id desc")
+    List<ChatMessage> findOlderThan(@Param("sessionId") String sessionId, @Param("timestamp") Instant timestamp,
+                                    @Param("id") String id, Pageable pageable);
+
+    @Query("select m from ChatMessage m where m.chatSession.id = :sessionId " +
+           "order by m.timestamp asc, m.id asc")
+    List<ChatMessage> findOldest(@Param("sessionId") String sessionId, Pageable pageable);
+
+    @Query("select m from ChatMessage m where m.chatSession.id = :sessionId " +
+           "and (m.timestamp > :timestamp or (m.timestamp = :timestamp and m.id > :id)) " +
+           "order by m.timestamp asc, m.id asc")
+    List<ChatMessage> findNewerThan(@Param("sessionId") String sessionId, @Param("timestamp") Instant timestamp,
+                                    @Param("id") String id, Pageable pageable);
+
+    /**
+     * Recherche plein texte dans les messages d'un utilisateur, archivés compris, servie par les index
+     * FULLTEXT ft_chat_messages_content et ft_chat_message_archive_texts_content (MySQL, mode booléen).
+     * Renvoie des triplets (id du message, score, 1 si le message est archivé sinon 0).
+     */
+    @Query(value = "SELECT hit.id, hit.score, hit.archived FROM (" +
+            "SELECT m.id, MATCH(m.content) AGAINST (:query IN BOOLEAN MODE) AS score, m.timestamp, 0 AS archived " +
+            "FROM chat_messages m JOIN chat_sessions s ON s.id = m.session_id " +
+            "WHERE s.user_id = :userId AND MATCH(m.content) AGAINST (:query IN BOOLEAN MODE) " +
+            "UNION ALL " +
+            "SELECT t.message_id, MATCH(t.content) AGAINST (:query IN BOOLEAN MODE) AS score, t.timestamp, 1 AS archived " +
+            "FROM chat_message_archive_texts t JOIN chat_sessions s ON s.id = t.session_id " +
+            "WHERE s.user_id = :userId AND MATCH(t.content) AGAINST (:query IN BOOLEAN MODE)" +
+            ") hit ORDER BY hit.score DESC, hit.timestamp DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Object[]> searchContent(@Param("userId") String userId, @Param("query") String query,
+                                 @Param("limit") int limit, @Param("offset") int offset);
+
+    @Query("select m from ChatMessage m join fetch m.chatSession where m.id in :ids")
+    List<ChatMessage> findWithSessionByIdIn(@Param("ids") List<String> ids);
 }
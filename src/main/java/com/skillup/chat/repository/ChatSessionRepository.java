@@ -1,12 +1,67 @@
 package com.skillup.chat.repository;
 
+import com.skillup.chat.dto.ChatSessionSummaryResponse;
 import com.skillup.chat.model.ChatSession;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ChatSessionRepository extends JpaRepository<ChatSession, String> {
     List<ChatSession> findByUserIdOrderByUpdatedAtDesc(String userId);
+
+    /**
+     * Liste des sessions avec nombre de messages et aperçu du dernier, en une seule requête.
+     * Les messages archivés sont comptés à partir des colonnes tenues à jour par l'archivage.
+     */
+    @Query("select new com.skillup.chat.dto.ChatSessionSummaryResponse(s.id, s.title, s.createdAt, s.updatedAt, " +
+           "(select count(m) from ChatMessage m where m.chatSession = s) + coalesce(s.archivedMessageCount, 0), " +
+           "coalesce((select substring(m.content, 1, 120) from ChatMessage m where m.chatSession = s " +
+           " order by m.timestamp desc, m.id desc limit 1), s.archivedPreview)) " +
+           "from ChatSession s where s.userId = :userId order by s.updatedAt desc")
+    List<ChatSessionSummaryResponse> findSummariesByUserId(@Param("userId") String userId);
+
+    @EntityGraph(attributePaths = "messages")
+    Optional<ChatSession> findWithMessagesById(String id);
+
+    /**
+     * Sessions inactives : des messages encore dans chat_messages, mais aucun depuis cutoff
+     */
+    @Query("select s.id from ChatSession s " +
+           "where exists (select 1 from ChatMessage m where m.chatSession = s) " +
+           "and not exists (select 1 from ChatMessage m where m.chatSession = s and m.timestamp >= :cutoff) " +
+           "order by s.updatedAt asc")
+    List<String> findIdleSessionIds(@Param("cutoff") Instant cutoff, Pageable pageable);
+
+    // Verrou de la ligne de session (SELECT ... FOR UPDATE) le temps de son archivage : deux instances
+    // ne peuvent pas archiver la même session en même temps, la seconde ne trouve plus rien à déplacer
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from ChatSession s where s.id = :id")
+    Optional<ChatSession> lockForArchiving(@Param("id") String id);
+
+    // Mise à jour directe : ne déclenche pas @PreUpdate, l'ordre de la liste des sessions est conservé
+    @Modifying
+    @Query("update ChatSession s set s.archivedAt = coalesce(s.archivedAt, :archivedAt), " +
+           "s.archivedMessageCount = coalesce(s.archivedMessageCount, 0) + :count, s.archivedPreview = :preview " +
+           "where s.id = :id")
+    int recordArchivedMessages(@Param("id") String id, @Param("archivedAt") Instant archivedAt,
+                               @Param("count") int count, @Param("preview") String preview);
+
+    @Modifying
+    @Query("update ChatSession s set s.contextSummary = :summary, s.summarizedUntil = :watermark, " +
+           "s.summarizedUntilId = :watermarkId " +
+           "where s.id = :id and (s.summarizedUntil is null or s.summarizedUntil < :watermark " +
+           "or (s.summarizedUntil = :watermark and (s.summarizedUntilId is null or s.summarizedUntilId < :watermarkId)))")
+    int updateContextSummary(@Param("id") String id, @Param("summary") String summary,
+                             @Param("watermark") Instant watermark, @Param("watermarkId") String watermarkId);
 }
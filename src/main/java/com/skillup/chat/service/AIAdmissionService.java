@@ -0,0 +1,302 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.model.ChatMessage;
+import com.skillup.common.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Contrôle d'admission des générations IA, en amont d'OpenRouter :
+ * - un plafond global de générations simultanées, au-delà duquel les demandes attendent dans une file bornée
+ *   pendant un délai maximal ;
+ * - par utilisateur, un nombre maximal de générations en cours (file comprise) et un débit limité
+ *   par un seau à jetons.
+ * Toute demande hors limites est refusée immédiatement (429) avec une estimation du délai avant nouvel essai.
+ */
+@Service
+public class AIAdmissionService {
+
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long queueTimeoutMs;
+    private final int userMaxConcurrent;
+    private final double userTokensPerSecond;
+    private final int userBurst;
+
+    // État global, protégé par le verrou de l'instance
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    private int running;
+    // Durée moyenne (lissée) d'une génération, pour estimer le Retry-After
+    private volatile double averageGenerationMs = 5000;
+
+    private final Map<String, UserState> users = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ai-admission-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Démarrage des demandes sorties de la file : leur préparation (contexte en base, recherche dans les notes)
+    // ne doit pas s'exécuter sur le thread OpenRouter qui vient de terminer la génération précédente
+    private final ExecutorService startExecutor;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer queueWait;
+
+    @Autowired
+    public AIAdmissionService(MeterRegistry meterRegistry,
+                              @Value("${ai.admission.max-concurrent:20}") int maxConcurrent,
+                              @Value("${ai.admission.queue-capacity:100}") int queueCapacity,
+                              @Value("${ai.admission.queue-timeout-ms:15000}") long queueTimeoutMs,
+                              @Value("${ai.admission.user-max-concurrent:3}") int userMaxConcurrent,
+                              @Value("${ai.admission.user-requests-per-minute:20}") int userRequestsPerMinute,
+                              @Value("${ai.admission.user-burst:5}") int userBurst,
+                              @Value("${ai.admission.start-threads:4}") int startThreads) {
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.userMaxConcurrent = userMaxConcurrent;
+        this.userTokensPerSecond = userRequestsPerMinute / 60.0;
+        this.userBurst = userBurst;
+        AtomicInteger startThreadCount = new AtomicInteger();
+        // File non bornée : elle ne contient jamais plus de demandes que la file d'admission
+        this.startExecutor = Executors.newFixedThreadPool(Math.max(1, startThreads), runnable -> {
+            Thread thread = new Thread(runnable, "ai-admission-start-" + startThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.queueWait = Timer.builder("ai.admission.queue.wait").register(meterRegistry);
+        Gauge.builder("ai.admission.queue.depth", this, admission -> admission.queueDepth()).register(meterRegistry);
+        Gauge.builder("ai.admission.running", this, admission -> admission.runningCount()).register(meterRegistry);
+    }
+
+    /**
+     * Lance la génération dès qu'un créneau est disponible. Un refus immédiat (débit, concurrence de
+     * l'utilisateur, file pleine) est levé directement ; l'expiration du délai d'attente dans la file
+     * termine le futur en erreur. Dans les deux cas, l'erreur est une TooManyRequestsException.
+     */
+    public CompletableFuture<ChatMessage> admit(String userId, CancellationSignal cancellation,
+                                                Supplier<CompletableFuture<ChatMessage>> generation) {
+        acquireUserSlot(userId);
+
+        Waiter waiter = new Waiter(userId, cancellation, generation);
+        boolean runNow = false;
+        boolean queueFull = false;
+        synchronized (this) {
+            if (running < maxConcurrent) {
+                running++;
+                runNow = true;
+            } else if (queue.size() < queueCapacity) {
+                queue.addLast(waiter);
+            } else {
+                queueFull = true;
+            }
+        }
+        if (queueFull) {
+            // Demande non admise : le jeton de débit est rendu à l'utilisateur
+            releaseUserSlot(userId, true);
+            throw reject("queue-full", "Trop de demandes en cours, réessayez plus tard", retryAfterSeconds(queueCapacity));
+        }
+
+        if (runNow) {
+            // Les erreurs synchrones (session ou message introuvable...) sont propagées telles quelles
+            start(waiter, true);
+        } else {
+            timeoutScheduler.schedule(() -> expire(waiter), queueTimeoutMs, TimeUnit.MILLISECONDS);
+            // Une demande abandonnée quitte la file sans jamais démarrer
+            cancellation.onCancel(reason -> withdraw(waiter, reason));
+        }
+        return waiter.result;
+    }
+
+    private void start(Waiter waiter, boolean rethrow) {
+        long startedAt = System.nanoTime();
+        queueWait.record(startedAt - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+
+        CompletableFuture<ChatMessage> generated;
+        try {
+            waiter.cancellation.throwIfCancelled();
+            generated = waiter.generation.get();
+        } catch (RuntimeException e) {
+            finish(waiter, startedAt);
+            if (rethrow) {
+                throw e;
+            }
+            waiter.result.completeExceptionally(e);
+            return;
+        }
+
+        generated.whenComplete((message, ex) -> {
+            finish(waiter, startedAt);
+            if (ex != null) {
+                waiter.result.completeExceptionally(ex);
+            } else {
+                waiter.result.complete(message);
+            }
+        });
+    }
+
+    /**
+     * Libère le créneau de l'utilisateur et transmet directement le créneau global à la prochaine demande
+     * en attente, s'il y en a une. Celle-ci démarre sur l'exécuteur dédié : ni sur le thread qui a terminé
+     * la génération, ni par récursion quand des réponses en cache se terminent immédiatement.
+     */
+    private void finish(Waiter waiter, long startedAt) {
+        releaseUserSlot(waiter.userId, false);
+
+        Waiter next;
+        synchronized (this) {
+            double elapsedMs = (System.nanoTime() - startedAt) / 1_000_000.0;
+            averageGenerationMs = 0.9 * averageGenerationMs + 0.1 * elapsedMs;
+            next = queue.pollFirst();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            try {
+                startExecutor.execute(() -> start(next, false));
+            } catch (RejectedExecutionException e) {
+                // Arrêt de l'application en cours
+                finish(next, System.nanoTime());
+                next.result.completeExceptionally(new GenerationCancelledException("shutdown"));
+            }
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        long retryAfter;
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return; // déjà démarrée
+            }
+            retryAfter = retryAfterSeconds(queue.size());
+        }
+        releaseUserSlot(waiter.userId, false);
+        waiter.result.completeExceptionally(
+                reject("queue-timeout", "Délai d'attente dépassé pour la génération IA, réessayez plus tard", retryAfter));
+    }
+
+    private void withdraw(Waiter waiter, String reason) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return; // déjà démarrée ou expirée
+            }
+        }
+        releaseUserSlot(waiter.userId, false);
+        waiter.result.completeExceptionally(new GenerationCancelledException(reason));
+    }
+
+    private void acquireUserSlot(String userId) {
+        long now = System.nanoTime();
+        TooManyRequestsException[] refusal = new TooManyRequestsException[1];
+        users.compute(userId, (key, state) -> {
+            UserState current = state != null ? state : new UserState(userBurst, now);
+            current.refill(now, userTokensPerSecond, userBurst);
+            if (current.active >= userMaxConcurrent) {
+                refusal[0] = reject("user-concurrency",
+                        "Trop de générations en cours pour cet utilisateur",
+                        (long) Math.ceil(averageGenerationMs / 1000.0));
+            } else if (current.tokens < 1) {
+                long wait = (long) Math.ceil((1 - current.tokens) / userTokensPerSecond);
+                refusal[0] = reject("user-rate", "Trop de demandes, réessayez plus tard", wait);
+            } else {
+                current.tokens -= 1;
+                current.active++;
+            }
+            return current;
+        });
+        if (refusal[0] != null) {
+            throw refusal[0];
+        }
+    }
+
+    /**
+     * refundToken : la demande n'a pas été admise, le jeton de débit pris par acquireUserSlot est rendu
+     */
+    private void releaseUserSlot(String userId, boolean refundToken) {
+        long now = System.nanoTime();
+        users.computeIfPresent(userId, (key, state) -> {
+            state.active--;
+            state.refill(now, userTokensPerSecond, userBurst);
+            if (refundToken) {
+                state.tokens = Math.min(userBurst, state.tokens + 1);
+            }
+            // Un utilisateur inactif dont le seau est plein n'a plus besoin d'être suivi
+            return state.active <= 0 && state.tokens >= userBurst ? null : state;
+        });
+    }
+
+    private long retryAfterSeconds(int queued) {
+        double waves = (double) (queued + 1) / maxConcurrent;
+        return (long) Math.ceil(waves * averageGenerationMs / 1000.0);
+    }
+
+    private TooManyRequestsException reject(String reason, String message, long retryAfterSeconds) {
+        Counter.builder("ai.admission.rejected").tag("reason", reason).register(meterRegistry).increment();
+        return new TooManyRequestsException(message, retryAfterSeconds);
+    }
+
+    private synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    private synchronized int runningCount() {
+        return running;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timeoutScheduler.shutdownNow();
+        startExecutor.shutdownNow();
+    }
+
+    private static final class Waiter {
+        private final String userId;
+        private final CancellationSignal cancellation;
+        private final Supplier<CompletableFuture<ChatMessage>> generation;
+        private final CompletableFuture<ChatMessage> result = new CompletableFuture<>();
+        private final long enqueuedAt = System.nanoTime();
+
+        private Waiter(String userId, CancellationSignal cancellation, Supplier<CompletableFuture<ChatMessage>> generation) {
+            this.userId = userId;
+            this.cancellation = cancellation;
+            this.generation = generation;
+        }
+    }
+
+    private static final class UserState {
+        private int active;
+        private double tokens;
+        private long refilledAt;
+
+        private UserState(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+
+        private void refill(long now, double tokensPerSecond, int burst) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) / 1_000_000_000.0 * tokensPerSecond);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.model.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Regroupe les demandes de réponse IA concurrentes pour un même message (double clic, nouvelle tentative
+ * du client, plusieurs onglets) : une seule génération est lancée et tous les appelants reçoivent le même
+ * ChatMessage. Une réponse aboutie reste servie pendant une courte fenêtre aux tentatives tardives.
+ * La génération partagée n'est annulée que lorsque tous ses appelants ont abandonné.
+ * En streaming, chaque fragment est remis séparément à chaque appelant : l'échec d'écriture de l'un
+ * (client déconnecté) ne concerne que lui et n'interrompt jamais le flux partagé.
+ */
+@Service
+public class AIRequestCoalescer {
+
+    private final Duration idempotencyWindow;
+
+    private final Map<String, SharedGeneration> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, RecentReply> recentReplies = new ConcurrentHashMap<>();
+
+    private final Counter joinedInFlight;
+    private final Counter servedFromWindow;
+
+    @Autowired
+    public AIRequestCoalescer(MeterRegistry meterRegistry,
+                              @Value("${ai.dedup.window-seconds:30}") long windowSeconds) {
+        this.idempotencyWindow = Duration.ofSeconds(windowSeconds);
+        this.joinedInFlight = Counter.builder("ai.requests.coalesced").tag("source", "in-flight")
+                .register(meterRegistry);
+        this.servedFromWindow = Counter.builder("ai.requests.coalesced").tag("source", "window")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Clé de regroupement : l'utilisateur en fait partie pour qu'un appelant ne puisse jamais
+     * rejoindre la génération d'un autre
+     */
+    public static String key(String userId, String sessionId, String messageId) {
+        return userId + ':' + sessionId + ':' + messageId;
+    }
+
+    /**
+     * Rejoint la génération en cours pour cette clé, sert la réponse récente ou lance la génération.
+     * Seul l'appelant qui lance la génération obtient leader = true.
+     */
+    public Flight execute(String key, CancellationSignal caller,
+                          Function<CancellationSignal, CompletableFuture<ChatMessage>> generation) {
+        return execute(key, caller, null, (shared, publish) -> generation.apply(shared));
+    }
+
+    /**
+     * Variante streaming : onToken reçoit les fragments de la génération partagée, précédés du texte
+     * déjà généré pour un appelant qui la rejoint en cours de route. La génération publie ses fragments
+     * par le Consumer qui lui est fourni. Si elle n'en publie aucun (réponse non streamée, rejointe
+     * par un appelant en streaming), la réponse complète est remise en un seul fragment.
+     */
+    public Flight execute(String key, CancellationSignal caller, Consumer<String> onToken,
+                          BiFunction<CancellationSignal, Consumer<String>, CompletableFuture<ChatMessage>> generation) {
+        RecentReply recent = recentReplies.get(key);
+        if (recent != null) {
+            if (recent.expiresAt().isAfter(Instant.now())) {
+                servedFromWindow.increment();
+                if (onToken != null) {
+                    deliver(onToken, recent.message().getContent());
+                }
+                return new Flight(CompletableFuture.completedFuture(recent.message()), false);
+            }
+            recentReplies.remove(key, recent);
+        }
+
+        SharedGeneration shared = new SharedGeneration();
+        shared.join();
+        SharedGeneration running;
+        while ((running = inFlight.putIfAbsent(key, shared)) != null) {
+            if (running.join()) {
+                joinedInFlight.increment();
+                subscribe(running, caller, onToken);
+                return new Flight(running.reply, false);
+            }
+            // Génération en cours d'annulation : elle est remplacée par une nouvelle
+            inFlight.remove(key, running);
+        }
+        subscribe(shared, caller, onToken);
+        CompletableFuture<ChatMessage> placeholder = shared.reply;
+
+        // La génération est lancée hors de la map pour ne pas bloquer les autres clés
+        CompletableFuture<ChatMessage> generated;
+        try {
+            generated = generation.apply(shared.cancellation, shared::publish);
+        } catch (RuntimeException e) {
+            inFlight.remove(key, shared);
+            placeholder.completeExceptionally(e);
+            throw e;
+        }
+
+        generated.whenComplete((message, ex) -> {
+            if (ex == null) {
+                remember(key, message);
+            }
+            inFlight.remove(key, shared);
+            if (ex != null) {
+                placeholder.completeExceptionally(ex);
+            } else {
+                shared.publishIfSilent(message.getContent());
+                placeholder.complete(message);
+            }
+        });
+        return new Flight(placeholder, true);
+    }
+
+    /**
+     * Abonne l'appelant aux fragments ; quand il abandonne, il cesse de les recevoir et quitte la génération
+     */
+    private static void subscribe(SharedGeneration shared, CancellationSignal caller, Consumer<String> onToken) {
+        if (onToken != null) {
+            shared.subscribe(onToken);
+        }
+        caller.onCancel(reason -> {
+            if (onToken != null) {
+                shared.unsubscribe(onToken);
+            }
+            shared.leave(reason);
+        });
+    }
+
+    /**
+     * Remet un fragment à un appelant. Une erreur de son consommateur ne concerne que lui :
+     * elle n'est jamais propagée au flux partagé.
+     */
+    private static boolean deliver(Consumer<String> onToken, String token) {
+        try {
+            onToken.accept(token);
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Fragment non transmis à un appelant: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void remember(String key, ChatMessage message) {
+        Instant now = Instant.now();
+        recentReplies.values().removeIf(reply -> !reply.expiresAt().isAfter(now));
+        recentReplies.put(key, new RecentReply(message, now.plus(idempotencyWindow)));
+    }
+
+    public record Flight(CompletableFuture<ChatMessage> reply, boolean leader) {
+    }
+
+    private record RecentReply(ChatMessage message, Instant expiresAt) {
+    }
+
+    /**
+     * Génération partagée : annulée quand son dernier appelant abandonne
+     */
+    private static final class SharedGeneration {
+        private final CompletableFuture<ChatMessage> reply = new CompletableFuture<>();
+        private final CancellationSignal cancellation = new CancellationSignal();
+        private int subscribers;
+        // Consommateurs de fragments des appelants en streaming, et texte déjà publié pour ceux qui arrivent
+        private final List<Consumer<String>> listeners = new ArrayList<>();
+        private final StringBuilder published = new StringBuilder();
+
+        // Sous le verrou : les fragments arrivent dans l'ordre, après le rattrapage d'un nouvel abonné
+        synchronized void subscribe(Consumer<String> onToken) {
+            if (published.length() > 0 && !deliver(onToken, published.toString())) {
+                return;
+            }
+            listeners.add(onToken);
+        }
+
+        synchronized void unsubscribe(Consumer<String> onToken) {
+            listeners.remove(onToken);
+        }
+
+        synchronized void publish(String token) {
+            published.append(token);
+            listeners.removeIf(listener -> !deliver(listener, token));
+        }
+
+        synchronized void publishIfSilent(String content) {
+            if (published.length() == 0 && content != null && !content.isEmpty()) {
+                publish(content);
+            }
+        }
+
+        synchronized boolean join() {
+            if (cancellation.isCancelled()) {
+                return false;
+            }
+            subscribers++;
+            return true;
+        }
+
+        synchronized void leave(String reason) {
+            if (--subscribers == 0) {
+                cancellation.cancel(reason);
+            }
+        }
+    }
+}
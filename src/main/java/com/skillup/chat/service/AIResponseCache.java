@@ -0,0 +1,134 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.model.AIResponseCacheEntry;
+import com.skillup.chat.repository.AIResponseCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache adressé par contenu des réponses IA sur les notes (summarize, review, quiz).
+ * Un premier niveau en mémoire, borné en taille (éviction LRU), s'appuie sur la table
+ * ai_response_cache pour survivre aux redémarrages.
+ */
+@Service
+public class AIResponseCache {
+
+    private final AIResponseCacheRepository cacheRepository;
+    private final long maxMemoryBytes;
+
+    // Ordre d'accès : le premier élément est le moins récemment utilisé
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    @Autowired
+    public AIResponseCache(AIResponseCacheRepository cacheRepository, MeterRegistry meterRegistry,
+                           @Value("${ai.cache.max-memory-bytes:16777216}") long maxMemoryBytes) {
+        this.cacheRepository = cacheRepository;
+        this.maxMemoryBytes = maxMemoryBytes;
+
+        this.memoryHits = Counter.builder("ai.cache.requests").tag("result", "hit").tag("tier", "memory")
+                .register(meterRegistry);
+        this.databaseHits = Counter.builder("ai.cache.requests").tag("result", "hit").tag("tier", "database")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ai.cache.requests").tag("result", "miss").tag("tier", "none")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("ai.cache.evictions").register(meterRegistry);
+        Gauge.builder("ai.cache.memory.entries", this, cache -> cache.memorySize()).register(meterRegistry);
+        Gauge.builder("ai.cache.memory.bytes", this, cache -> cache.memoryBytes()).register(meterRegistry);
+    }
+
+    /**
+     * Empreinte des paramètres qui déterminent entièrement la réponse de l'IA
+     */
+    public String key(String action, String model, String noteTitle, String noteContent) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{action, model, noteTitle, noteContent}) {
+                byte[] bytes = (part == null ? "" : part).getBytes(StandardCharsets.UTF_8);
+                // Préfixer par la longueur pour que ("ab", "c") et ("a", "bc") donnent des empreintes différentes
+                digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ':');
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    public Optional<String> get(String key) {
+        synchronized (this) {
+            String content = memory.get(key);
+            if (content != null) {
+                memoryHits.increment();
+                return Optional.of(content);
+            }
+        }
+
+        Optional<String> stored = cacheRepository.findById(key).map(AIResponseCacheEntry::getContent);
+        if (stored.isPresent()) {
+            databaseHits.increment();
+            remember(key, stored.get());
+        } else {
+            misses.increment();
+        }
+        return stored;
+    }
+
+    public void put(String key, String action, String model, String content) {
+        remember(key, content);
+        cacheRepository.save(AIResponseCacheEntry.builder()
+                .cacheKey(key)
+                .action(action)
+                .model(model)
+                .content(content)
+                .build());
+    }
+
+    private synchronized void remember(String key, String content) {
+        String previous = memory.put(key, content);
+        if (previous != null) {
+            memoryBytes -= weight(previous);
+        }
+        memoryBytes += weight(content);
+
+        Iterator<Map.Entry<String, String>> iterator = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            Map.Entry<String, String> eldest = iterator.next();
+            memoryBytes -= weight(eldest.getValue());
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static long weight(String content) {
+        // Approximation de l'empreinte mémoire d'une chaîne Java
+        return 2L * content.length() + 64;
+    }
+
+    private synchronized int memorySize() {
+        return memory.size();
+    }
+
+    private synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+}
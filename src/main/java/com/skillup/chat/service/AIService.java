@@ -1,94 +1,260 @@
 package com.skillup.chat.service;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.skillup.chat.config.OpenRouterConfig;
+import com.skillup.chat.client.ModelRouter;
+import com.skillup.chat.client.OpenRouterClient.Message;
 import com.skillup.chat.dto.AIResponseRequest;
 import com.skillup.chat.dto.ChatMessageRequest;
 import com.skillup.chat.model.ChatMessage;
-import com.skillup.chat.model.ChatSession;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import com.skillup.chat.service.ChatContextService.GenerationContext;
+import com.skillup.notes.service.NoteRetrievalIndex;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 public class AIService {
 
-    private final RestTemplate restTemplate;
-    private final OpenRouterConfig openRouterConfig;
-    private final ChatMessageService chatMessageService;
-    private final ChatSessionService chatSessionService;
+    private static final Set<String> CACHEABLE_NOTE_ACTIONS = Set.of("summarize", "review", "quiz");
+
+    private final ModelRouter modelRouter;
+    private final ChatContextService chatContextService;
+    private final AIResponseCache aiResponseCache;
+    private final AIRequestCoalescer aiRequestCoalescer;
+    private final AIAdmissionService aiAdmissionService;
+    private final AIUsageService aiUsageService;
+    private final NoteRetrievalIndex noteRetrievalIndex;
+    private final NoteQuizService noteQuizService;
     private final ObjectMapper objectMapper;
+    private final int notesTopK;
+    private final int notesMaxTokens;
+    private final DistributionSummary notesInjectedTokens;
 
     @Autowired
-    public AIService(RestTemplate restTemplate, OpenRouterConfig openRouterConfig,
-                     ChatMessageService chatMessageService, ChatSessionService chatSessionService,
-                     ObjectMapper objectMapper) {
-        this.restTemplate = restTemplate;
-        this.openRouterConfig = openRouterConfig;
-        this.chatMessageService = chatMessageService;
-        this.chatSessionService = chatSessionService;
+    public AIService(ModelRouter modelRouter,
+                     ChatContextService chatContextService,
+                     AIResponseCache aiResponseCache, AIRequestCoalescer aiRequestCoalescer,
+                     AIAdmissionService aiAdmissionService, AIUsageService aiUsageService,
+                     NoteRetrievalIndex noteRetrievalIndex, NoteQuizService noteQuizService,
+                     ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                     @Value("${ai.notes-context.top-k:4}") int notesTopK,
+                     @Value("${ai.notes-context.max-tokens:600}") int notesMaxTokens) {
+        this.modelRouter = modelRouter;
+        this.chatContextService = chatContextService;
+        this.aiResponseCache = aiResponseCache;
+        this.aiRequestCoalescer = aiRequestCoalescer;
+        this.aiAdmissionService = aiAdmissionService;
+        this.aiUsageService = aiUsageService;
+        this.noteRetrievalIndex = noteRetrievalIndex;
+        this.noteQuizService = noteQuizService;
         this.objectMapper = objectMapper;
+        this.notesTopK = notesTopK;
+        this.notesMaxTokens = notesMaxTokens;
+        this.notesInjectedTokens = DistributionSummary.builder("ai.notes-context.tokens").register(meterRegistry);
     }
 
-    @Transactional
-    public ChatMessage generateAIResponse(String sessionId, AIResponseRequest request, String userId) {
-        // Vérifier que l'utilisateur a accès à cette session
-        ChatSession chatSession = chatSessionService.getChatSessionById(sessionId, userId);
-        
-        // Récupérer le message de l'utilisateur
-        ChatMessage userMessage = chatMessageService.getMessageById(request.getMessageId());
+    /**
+     * Génère la réponse de l'IA en trois étapes, sans transaction englobante :
+     * lecture courte du contexte, appel à OpenRouter sans connexion JDBC retenue,
+     * puis écriture courte du message de l'IA à la complétion du futur.
+     * Les actions sur une note déjà traitée sont servies depuis le cache, sans appel à OpenRouter.
+     * Les demandes concurrentes pour un même message partagent une seule génération,
+     * soumise au contrôle d'admission (AIAdmissionService) après vérification du quota journalier.
+     * Une fois cancellation annulé (client parti, délai dépassé), l'appel à OpenRouter est interrompu
+     * et aucune réponse n'est enregistrée.
+     */
+    public CompletableFuture<ChatMessage> generateAIResponse(String sessionId, AIResponseRequest request, String userId,
+                                                             CancellationSignal cancellation) {
+        aiUsageService.checkQuota(userId);
+        String key = AIRequestCoalescer.key(userId, sessionId, request.getMessageId());
+        return aiRequestCoalescer.execute(key, cancellation, shared -> aiAdmissionService.admit(userId, shared, () ->
+                generate(chatContextService.loadContext(sessionId, request.getMessageId(), userId), shared)))
+                .reply();
+    }
+
+    /**
+     * Enregistre le message de l'utilisateur et génère sa réponse en un seul passage : la session et
+     * l'historique chargés pour l'enregistrement servent directement à la génération. Le message n'est
+     * enregistré qu'une fois la demande admise ; il est alors transmis à onUserMessage.
+     */
+    public CompletableFuture<ChatMessage> exchange(String sessionId, ChatMessageRequest request, String userId,
+                                                   CancellationSignal cancellation, Consumer<ChatMessage> onUserMessage) {
+        aiUsageService.checkQuota(userId);
+        return aiAdmissionService.admit(userId, cancellation, () -> {
+            GenerationContext generationContext = chatContextService.appendUserMessage(sessionId, request, userId);
+            onUserMessage.accept(generationContext.getUserMessage());
+            return generate(generationContext, cancellation);
+        });
+    }
+
+    public CompletableFuture<ChatMessage> streamExchange(String sessionId, ChatMessageRequest request, String userId,
+                                                         CancellationSignal cancellation,
+                                                         Consumer<ChatMessage> onUserMessage, Consumer<String> onToken) {
+        aiUsageService.checkQuota(userId);
+        return aiAdmissionService.admit(userId, cancellation, () -> {
+            GenerationContext generationContext = chatContextService.appendUserMessage(sessionId, request, userId);
+            onUserMessage.accept(generationContext.getUserMessage());
+            return stream(generationContext, cancellation, onToken);
+        });
+    }
+
+    private CompletableFuture<ChatMessage> generate(GenerationContext generationContext, CancellationSignal cancellation) {
+        ChatMessage userMessage = generationContext.getUserMessage();
+        ChatMessageRequest.MessageMetadata metadata = metadataOf(generationContext);
         
-        // Vérifier que le message appartient à la session
-        if (!userMessage.getChatSession().getId().equals(sessionId)) {
-            throw new IllegalArgumentException("Le message n'appartient pas à cette session de chat");
+        Optional<NoteQuizService.StoredQuiz> storedQuiz = storedQuiz(generationContext, metadata);
+        if (storedQuiz.isPresent()) {
+            return CompletableFuture.completedFuture(chatContextService.saveReply(generationContext,
+                    storedQuiz.get().content(), storedQuiz.get().model(), null, null));
+        }
+        String cacheKey = cacheKeyFor(userMessage.getMessageType(), metadata);
+        if (cacheKey != null) {
+            Optional<String> cached = aiResponseCache.get(cacheKey);
+            if (cached.isPresent()) {
+                return CompletableFuture.completedFuture(
+                        chatContextService.saveReply(generationContext, cached.get(), modelRouter.primaryModel(), null, null));
+            }
         }
         
-        // Récupérer tous les messages de la session pour le contexte
-        List<ChatMessage> sessionMessages = chatMessageService.getSessionMessages(sessionId, userId);
+        // Préparer le contexte pour l'IA (résumé des messages précédents pour économiser des tokens)
+        List<Message> context = prepareContext(generationContext, userMessage.getMessageType(), metadata);
         
-        // Vérifier si le message contient des métadonnées spéciales
-        String messageType = userMessage.getMessageType();
-        String metadataJson = userMessage.getMetadata();
-        ChatMessageRequest.MessageMetadata metadata = null;
+        // Appeler OpenRouter (avec repli sur les autres modèles) puis créer et sauvegarder le message de l'IA.
+        // Un échec n'est jamais enregistré comme message : il est propagé à l'appelant.
+        return modelRouter.complete(context, cancellation, usage -> recordAbandoned(generationContext, usage))
+                .thenApply(completion -> saveCompletion(generationContext, cacheKey, metadata, completion, cancellation));
+    }
+
+    /**
+     * Génère la réponse de l'IA en mode streaming : chaque fragment reçu d'OpenRouter
+     * est transmis à onToken dès son arrivée, puis le message complet est sauvegardé
+     * une seule fois à la fin du flux
+     */
+    public CompletableFuture<ChatMessage> streamAIResponse(String sessionId, AIResponseRequest request, String userId,
+                                                           CancellationSignal cancellation, Consumer<String> onToken) {
+        aiUsageService.checkQuota(userId);
+        String key = AIRequestCoalescer.key(userId, sessionId, request.getMessageId());
+        // Chaque appelant reçoit les fragments sur son propre consommateur : un client parti ne coupe pas le flux des autres
+        return aiRequestCoalescer.execute(key, cancellation, onToken, (shared, publish) ->
+                aiAdmissionService.admit(userId, shared, () ->
+                        stream(chatContextService.loadContext(sessionId, request.getMessageId(), userId), shared, publish)))
+                .reply();
+    }
+
+    private CompletableFuture<ChatMessage> stream(GenerationContext generationContext, CancellationSignal cancellation,
+                                                  Consumer<String> onToken) {
+        ChatMessage userMessage = generationContext.getUserMessage();
+        ChatMessageRequest.MessageMetadata metadata = metadataOf(generationContext);
         
-        if (metadataJson != null && !metadataJson.isEmpty()) {
-            try {
-                metadata = objectMapper.readValue(metadataJson, ChatMessageRequest.MessageMetadata.class);
-            } catch (JsonProcessingException e) {
-                System.out.println("Erreur lors de la lecture des métadonnées: " + e.getMessage());
+        Optional<NoteQuizService.StoredQuiz> storedQuiz = storedQuiz(generationContext, metadata);
+        if (storedQuiz.isPresent()) {
+            onToken.accept(storedQuiz.get().content());
+            return CompletableFuture.completedFuture(chatContextService.saveReply(generationContext,
+                    storedQuiz.get().content(), storedQuiz.get().model(), null, null));
+        }
+        String cacheKey = cacheKeyFor(userMessage.getMessageType(), metadata);
+        if (cacheKey != null) {
+            Optional<String> cached = aiResponseCache.get(cacheKey);
+            if (cached.isPresent()) {
+                onToken.accept(cached.get());
+                return CompletableFuture.completedFuture(
+                        chatContextService.saveReply(generationContext, cached.get(), modelRouter.primaryModel(), null, null));
             }
         }
         
-        // Préparer le contexte pour l'IA (résumé des messages précédents pour économiser des tokens)
-        List<Message> context = prepareContext(sessionMessages, messageType, metadata);
-        
-        // Appeler l'API OpenRouter
-        String aiResponse = callOpenRouterAPI(context);
+        List<Message> context = prepareContext(generationContext, userMessage.getMessageType(), metadata);
         
-        // Créer et sauvegarder le message de l'IA
-        ChatMessage aiMessage = ChatMessage.builder()
-                .chatSession(chatSession)
-                .content(aiResponse)
-                .role(ChatMessage.MessageRole.assistant)
-                .build();
-        System.out.println("AI Response: " + aiResponse);
-        return chatMessageService.saveMessage(aiMessage);
+        return modelRouter.stream(context, cancellation, onToken, usage -> recordAbandoned(generationContext, usage))
+                .thenApply(completion -> saveCompletion(generationContext, cacheKey, metadata, completion, cancellation));
+    }
+
+    private ChatMessage saveCompletion(GenerationContext generationContext, String cacheKey,
+                                       ChatMessageRequest.MessageMetadata metadata, ModelRouter.Completion completion,
+                                       CancellationSignal cancellation) {
+        // Ordre voulu : décompte et cache avant la vérification de l'annulation.
+        // Les tokens sont dus dès la réponse d'OpenRouter, même si personne ne l'attend plus
+        // ou si l'enregistrement échoue ensuite
+        aiUsageService.record(generationContext.getChatSession().getUserId(), completion);
+        // Une réponse complète reste valable pour la note : la garder en cache évite de payer
+        // une seconde génération quand l'utilisateur relance la même action.
+        // Seules les réponses du modèle préféré sont mises en cache : la clé est calculée pour lui
+        if (cacheKey != null && completion.model().equals(modelRouter.primaryModel())) {
+            aiResponseCache.put(cacheKey, metadata.getAction(), completion.model(), completion.content());
+        }
+        // Plus personne n'attend la réponse : elle n'est pas ajoutée à la conversation
+        cancellation.throwIfCancelled();
+        return chatContextService.saveReply(generationContext, completion.content(), completion.model(),
+                completion.promptTokens(), completion.completionTokens());
+    }
+
+    /**
+     * Génération facturée sans réponse complète (annulée ou flux interrompu) : sa consommation
+     * estimée est décomptée du quota comme une réponse
+     */
+    private void recordAbandoned(GenerationContext generationContext, ModelRouter.Completion usage) {
+        aiUsageService.record(generationContext.getChatSession().getUserId(), usage);
+    }
+
+    /**
+     * Métadonnées du message à traiter : celles de la requête quand le message vient d'être reçu,
+     * sinon lues une seule fois depuis la colonne JSON
+     */
+    private ChatMessageRequest.MessageMetadata metadataOf(GenerationContext generationContext) {
+        if (generationContext.getUserMetadata() != null) {
+            return generationContext.getUserMetadata();
+        }
+        String metadataJson = generationContext.getUserMessage().getMetadata();
+        if (metadataJson == null || metadataJson.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(metadataJson, ChatMessageRequest.MessageMetadata.class);
+        } catch (JsonProcessingException e) {
+            // La colonne JSON est validée par la base : une valeur illisible ici est une anomalie.
+            // Le message est alors traité sans métadonnées (ni cache, ni quiz enregistré)
+            System.err.println("Métadonnées illisibles pour le message " + generationContext.getUserMessage().getId()
+                    + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Action "quiz" sur une note identifiée dont le quiz a déjà été généré à l'avance : servi depuis la base
+     */
+    private Optional<NoteQuizService.StoredQuiz> storedQuiz(GenerationContext generationContext,
+                                                            ChatMessageRequest.MessageMetadata metadata) {
+        if (!"note".equals(generationContext.getUserMessage().getMessageType()) || metadata == null
+                || !"quiz".equals(metadata.getAction()) || metadata.getNoteId() == null) {
+            return Optional.empty();
+        }
+        return noteQuizService.findForChat(metadata.getNoteId(), generationContext.getChatSession().getUserId(),
+                metadata.getNoteTitle(), metadata.getNoteContent());
+    }
+
+    /**
+     * Les actions sur une note ne dépendent que de la note et du modèle (pas de l'historique) :
+     * leur réponse peut être réutilisée tant que la note n'a pas changé
+     */
+    private String cacheKeyFor(String messageType, ChatMessageRequest.MessageMetadata metadata) {
+        if (!"note".equals(messageType) || metadata == null || metadata.getNoteContent() == null
+                || !CACHEABLE_NOTE_ACTIONS.contains(metadata.getAction())) {
+            return null;
+        }
+        return aiResponseCache.key(metadata.getAction(), modelRouter.primaryModel(),
+                metadata.getNoteTitle(), metadata.getNoteContent());
     }
     
-    private List<Message> prepareContext(List<ChatMessage> messages, String messageType, ChatMessageRequest.MessageMetadata metadata) {
+    private List<Message> prepareContext(GenerationContext generationContext, String messageType, ChatMessageRequest.MessageMetadata metadata) {
         List<Message> context = new ArrayList<>();
         
         // Ajouter des instructions spécifiques en fonction du type de message et des métadonnées
@@ -125,90 +291,52 @@ public class AIService {
             }
         }
         
-        // Si la conversation est longue, résumer les anciens messages pour économiser des tokens
-        if (messages.size() > 10) {
-            // Ajouter un résumé des messages précédents
-            StringBuilder summary = new StringBuilder("Résumé de la conversation précédente: ");
-            for (int i = 0; i < messages.size() - 10; i++) {
-                ChatMessage msg = messages.get(i);
-                summary.append(msg.getRole().name()).append(": ")
-                       .append(msg.getContent().length() > 50 ? 
-                               msg.getContent().substring(0, 50) + "..." : 
-                               msg.getContent())
-                       .append(". ");
-            }
-            
-            // Ajouter le résumé comme message du système si ce n'est pas déjà fait
-            if (context.isEmpty()) {
-                context.add(new Message("system", summary.toString()));
-            }
-            
-            // Ajouter les 10 derniers messages complets
-            for (int i = messages.size() - 10; i < messages.size(); i++) {
-                ChatMessage msg = messages.get(i);
-                context.add(new Message(msg.getRole().name(), msg.getContent()));
-            }
-        } else {
-            // Si la conversation est courte, ajouter tous les messages
-            for (ChatMessage msg : messages) {
-                context.add(new Message(msg.getRole().name(), msg.getContent()));
-            }
+        // Conversation libre : passages utiles des notes de l'utilisateur, puis résumé glissant
+        // et messages récents, chacun dans son budget de tokens
+        Message notesExcerpts = notesExcerpts(generationContext);
+        if (notesExcerpts != null) {
+            context.add(notesExcerpts);
         }
-        
+        context.addAll(chatContextService.buildConversationWindow(generationContext));
         return context;
     }
-    
-    private String callOpenRouterAPI(List<Message> messages) {
-        String url = openRouterConfig.getApiUrl() + "/chat/completions";
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("Authorization", "Bearer " + openRouterConfig.getApiKey());
-        
-        OpenRouterRequest request = new OpenRouterRequest();
-        request.setModel(openRouterConfig.getModel());
-        request.setMessages(messages);
-        
-        HttpEntity<OpenRouterRequest> entity = new HttpEntity<>(request, headers);
-        
+
+    /**
+     * Passages des notes de l'utilisateur les plus proches de sa question (index BM25 local),
+     * ajoutés du plus pertinent au moins pertinent tant qu'ils tiennent dans ai.notes-context.max-tokens
+     */
+    private Message notesExcerpts(GenerationContext generationContext) {
+        if (notesTopK <= 0 || notesMaxTokens <= 0) {
+            return null;
+        }
+        List<NoteRetrievalIndex.Passage> passages;
         try {
-            OpenRouterResponse response = restTemplate.postForObject(url, entity, OpenRouterResponse.class);
-            if (response != null && response.getChoices() != null && !response.getChoices().isEmpty()) {
-                return response.getChoices().get(0).getMessage().getContent();
+            passages = noteRetrievalIndex.search(generationContext.getChatSession().getUserId(),
+                    generationContext.getUserMessage().getContent(), notesTopK);
+        } catch (RuntimeException e) {
+            // Les notes enrichissent la réponse mais ne sont pas indispensables
+            System.err.println("Recherche dans les notes impossible: " + e.getMessage());
+            return null;
+        }
+
+        StringBuilder excerpts = new StringBuilder(
+                "Extraits des notes de l'utilisateur liés à sa question. Appuie-toi dessus lorsqu'ils sont pertinents.\n");
+        int used = TokenEstimator.estimateMessage(excerpts.toString());
+        int added = 0;
+        for (NoteRetrievalIndex.Passage passage : passages) {
+            String block = "\n### " + passage.noteTitle() + "\n" + passage.text() + "\n";
+            int cost = TokenEstimator.estimate(block);
+            if (used + cost > notesMaxTokens) {
+                continue; // un passage suivant, plus court, peut encore tenir
             }
-        } catch (Exception e) {
-            // En cas d'erreur, retourner un message d'erreur
-            return "Désolé, je n'ai pas pu générer une réponse. Erreur: " + e.getMessage();
+            excerpts.append(block);
+            used += cost;
+            added++;
         }
-        
-        return "Désolé, je n'ai pas pu générer une réponse.";
-    }
-    
-    @Data
-    @NoArgsConstructor
-    @AllArgsConstructor
-    private static class Message {
-        private String role;
-        private String content;
-    }
-    
-    @Data
-    private static class OpenRouterRequest {
-        private String model;
-        private List<Message> messages;
-    }
-    
-    @Data
-    private static class OpenRouterResponse {
-        private List<Choice> choices;
-    }
-    
-    @Data
-    private static class Choice {
-        private Message message;
-        private int index;
-        
-        @JsonProperty("finish_reason")
-        private String finishReason;
+        if (added == 0) {
+            return null;
+        }
+        notesInjectedTokens.record(used);
+        return new Message("system", excerpts.toString());
     }
 }
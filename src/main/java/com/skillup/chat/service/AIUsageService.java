@@ -0,0 +1,248 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.client.ModelRouter;
+import com.skillup.chat.dto.AIUsageResponse;
+import com.skillup.chat.model.AIUsageDaily;
+import com.skillup.chat.repository.AIUsageDailyRepository;
+import com.skillup.common.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Comptabilité des tokens consommés par utilisateur et par jour (UTC), et quotas journaliers.
+ * Chaque génération incrémente un compteur en mémoire ; les deltas sont reportés en base toutes les
+ * ai.usage.flush-interval-ms par un upsert additif, sans écriture sur le chemin de la réponse.
+ * Le quota est vérifié avant l'appel à OpenRouter (ai.quota.daily-tokens, ai.quota.daily-requests,
+ * 0 = illimité) : une génération déjà lancée peut donc le dépasser légèrement.
+ */
+@Service
+public class AIUsageService {
+
+    private final AIUsageDailyRepository aiUsageDailyRepository;
+    private final MeterRegistry meterRegistry;
+    private final long dailyTokenQuota;
+    private final long dailyRequestQuota;
+
+    private final Map<AIUsageDaily.Key, DailyCounter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AIUsageService(AIUsageDailyRepository aiUsageDailyRepository, MeterRegistry meterRegistry,
+                          @Value("${ai.quota.daily-tokens:200000}") long dailyTokenQuota,
+                          @Value("${ai.quota.daily-requests:0}") long dailyRequestQuota) {
+        this.aiUsageDailyRepository = aiUsageDailyRepository;
+        this.meterRegistry = meterRegistry;
+        this.dailyTokenQuota = dailyTokenQuota;
+        this.dailyRequestQuota = dailyRequestQuota;
+    }
+
+    /**
+     * Refuse la demande (429 jusqu'à minuit UTC) si l'utilisateur a épuisé son quota du jour
+     */
+    public void checkQuota(String userId) {
+        DailyCounter counter = counter(userId, today());
+        String reason = null;
+        synchronized (counter) {
+            if (dailyTokenQuota > 0 && counter.totalTokens() >= dailyTokenQuota) {
+                reason = "tokens";
+            } else if (dailyRequestQuota > 0 && counter.requests >= dailyRequestQuota) {
+                reason = "requests";
+            }
+        }
+        if (reason != null) {
+            meterRegistry.counter("ai.quota.rejections", "reason", reason).increment();
+            throw new TooManyRequestsException("Quota IA journalier atteint, réessayez demain",
+                    secondsUntilTomorrow());
+        }
+    }
+
+    /**
+     * Enregistre la consommation d'une génération : réponse complète, ou estimation
+     * d'une génération annulée ou interrompue
+     */
+    public void record(String userId, ModelRouter.Completion completion) {
+        LocalDate date = today();
+        while (true) {
+            DailyCounter counter = counter(userId, date);
+            synchronized (counter) {
+                if (counter.evicted) {
+                    continue; // retiré par un report concurrent : on repart d'un compteur frais
+                }
+                counter.add(1, completion.promptTokens(), completion.completionTokens());
+                break;
+            }
+        }
+        meterRegistry.counter("ai.usage.requests", "model", completion.model()).increment();
+        meterRegistry.counter("ai.usage.tokens", "type", "prompt", "model", completion.model())
+                .increment(completion.promptTokens());
+        meterRegistry.counter("ai.usage.tokens", "type", "completion", "model", completion.model())
+                .increment(completion.completionTokens());
+    }
+
+    /**
+     * Consommation du jour, quotas restants et historique sur les derniers jours
+     */
+    public AIUsageResponse getUsage(String userId, int days) {
+        LocalDate today = today();
+        // Du plus récent au plus ancien
+        Map<LocalDate, AIUsageResponse.DailyUsage> byDate = new TreeMap<>(Comparator.reverseOrder());
+        for (AIUsageDaily row : aiUsageDailyRepository
+                .findByUserIdAndUsageDateGreaterThanEqualOrderByUsageDateDesc(userId, today.minusDays(days - 1L))) {
+            byDate.put(row.getUsageDate(), new AIUsageResponse.DailyUsage(row.getUsageDate(), row.getRequests(),
+                    row.getPromptTokens(), row.getCompletionTokens(), row.getPromptTokens() + row.getCompletionTokens()));
+        }
+        // Les compteurs en mémoire incluent les deltas pas encore reportés
+        counter(userId, today);
+        counters.forEach((key, counter) -> {
+            if (key.getUserId().equals(userId) && !key.getUsageDate().isBefore(today.minusDays(days - 1L))) {
+                synchronized (counter) {
+                    byDate.put(key.getUsageDate(), new AIUsageResponse.DailyUsage(key.getUsageDate(), counter.requests,
+                            counter.promptTokens, counter.completionTokens, counter.totalTokens()));
+                }
+            }
+        });
+
+        AIUsageResponse.DailyUsage current = byDate.get(today);
+
+        AIUsageResponse response = new AIUsageResponse();
+        response.setToday(current);
+        response.setHistory(new ArrayList<>(byDate.values()));
+        if (dailyTokenQuota > 0) {
+            response.setDailyTokenQuota(dailyTokenQuota);
+            response.setRemainingTokens(Math.max(0, dailyTokenQuota - current.getTotalTokens()));
+        }
+        if (dailyRequestQuota > 0) {
+            response.setDailyRequestQuota(dailyRequestQuota);
+            response.setRemainingRequests(Math.max(0, dailyRequestQuota - current.getRequests()));
+        }
+        response.setResetsAt(today.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        return response;
+    }
+
+    /**
+     * Reporte en base les deltas accumulés depuis le dernier passage. En cas d'échec les deltas sont
+     * conservés pour le passage suivant ; les compteurs des jours passés sont ensuite libérés.
+     */
+    @Scheduled(fixedDelayString = "${ai.usage.flush-interval-ms:10000}")
+    public void flush() {
+        LocalDate today = today();
+        counters.forEach((key, counter) -> {
+            long requests;
+            long promptTokens;
+            long completionTokens;
+            synchronized (counter) {
+                requests = counter.pendingRequests;
+                promptTokens = counter.pendingPromptTokens;
+                completionTokens = counter.pendingCompletionTokens;
+                counter.clearPending();
+            }
+            if (requests > 0 || promptTokens > 0 || completionTokens > 0) {
+                try {
+                    aiUsageDailyRepository.addUsage(key.getUserId(), key.getUsageDate(),
+                            requests, promptTokens, completionTokens);
+                } catch (Exception e) {
+                    System.err.println("Report de la consommation IA impossible: " + e.getMessage());
+                    synchronized (counter) {
+                        counter.restorePending(requests, promptTokens, completionTokens);
+                    }
+                    return;
+                }
+            }
+            if (key.getUsageDate().isBefore(today)) {
+                synchronized (counter) {
+                    if (!counter.hasPending()) {
+                        counter.evicted = true;
+                        counters.remove(key, counter);
+                    }
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private DailyCounter counter(String userId, LocalDate date) {
+        AIUsageDaily.Key key = new AIUsageDaily.Key(userId, date);
+        DailyCounter counter = counters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        // Première utilisation du jour sur cette instance : on repart du total déjà reporté en base
+        DailyCounter loaded = aiUsageDailyRepository.findById(key)
+                .map(row -> new DailyCounter(row.getRequests(), row.getPromptTokens(), row.getCompletionTokens()))
+                .orElseGet(() -> new DailyCounter(0, 0, 0));
+        DailyCounter existing = counters.putIfAbsent(key, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    private static long secondsUntilTomorrow() {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        return Duration.between(now, now.toLocalDate().plusDays(1).atStartOfDay(ZoneOffset.UTC)).getSeconds();
+    }
+
+    /**
+     * Totaux du jour (base + mémoire) et deltas pas encore reportés, protégés par le verrou du compteur
+     */
+    private static class DailyCounter {
+        private long requests;
+        private long promptTokens;
+        private long completionTokens;
+        private long pendingRequests;
+        private long pendingPromptTokens;
+        private long pendingCompletionTokens;
+        private boolean evicted;
+
+        DailyCounter(long requests, long promptTokens, long completionTokens) {
+            this.requests = requests;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+        }
+
+        void add(long requests, long promptTokens, long completionTokens) {
+            this.requests += requests;
+            this.promptTokens += promptTokens;
+            this.completionTokens += completionTokens;
+            restorePending(requests, promptTokens, completionTokens);
+        }
+
+        void restorePending(long requests, long promptTokens, long completionTokens) {
+            pendingRequests += requests;
+            pendingPromptTokens += promptTokens;
+            pendingCompletionTokens += completionTokens;
+        }
+
+        void clearPending() {
+            pendingRequests = 0;
+            pendingPromptTokens = 0;
+            pendingCompletionTokens = 0;
+        }
+
+        boolean hasPending() {
+            return pendingRequests > 0 || pendingPromptTokens > 0 || pendingCompletionTokens > 0;
+        }
+
+        long totalTokens() {
+            return promptTokens + completionTokens;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.skillup.chat.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Annulation d'une génération IA, déclenchée par le contrôleur (client déconnecté, délai dépassé) et
+ * propagée à la file d'admission, au routeur de modèles puis à l'échange HTTP avec OpenRouter
+ */
+public final class CancellationSignal {
+
+    private final CompletableFuture<String> reason = new CompletableFuture<>();
+
+    /**
+     * @return true pour la première annulation seulement
+     */
+    public boolean cancel(String reason) {
+        return this.reason.complete(reason);
+    }
+
+    public boolean isCancelled() {
+        return reason.isDone();
+    }
+
+    /**
+     * L'action reçoit le motif d'annulation ; elle s'exécute tout de suite si le signal est déjà annulé
+     */
+    public void onCancel(Consumer<String> action) {
+        reason.thenAccept(action);
+    }
+
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new GenerationCancelledException(reason.join());
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.skillup.chat.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillup.chat.model.ChatMessage;
+import com.skillup.chat.model.ChatMessageArchive;
+import com.skillup.chat.model.ChatMessageArchiveText;
+import com.skillup.chat.model.ChatSession;
+import com.skillup.chat.repository.ChatMessageArchiveRepository;
+import com.skillup.chat.repository.ChatMessageArchiveTextRepository;
+import com.skillup.chat.repository.ChatMessageRepository;
+import com.skillup.chat.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archivage à froid des messages des sessions inactives. Une tâche périodique sort de chat_messages
+ * les messages des sessions sans activité depuis chat.archive.idle-days jours et les range, par blocs
+ * compressés, dans chat_message_archives. Les lectures d'une session archivée fusionnent en mémoire
+ * les blocs décompressés et les messages restés dans chat_messages, sans réécriture : l'API est inchangée.
+ * Les blocs sont chronologiques et sans chevauchement : le contexte et la pagination ne décompressent
+ * que ceux qui couvrent la position demandée, grâce à leurs horodatages de début et de fin.
+ * Un extrait borné de chaque message archivé (chat.archive.search-excerpt-chars) est gardé dans
+ * chat_message_archive_texts pour la recherche plein texte : le texte complet n'existe plus qu'en bloc
+ * compressé. Chaque session est archivée sous verrou de sa ligne : plusieurs instances peuvent exécuter
+ * la tâche sans archiver deux fois les mêmes messages.
+ */
+@Service
+public class ChatArchiveService {
+
+    private static final int PREVIEW_CHARS = 120;
+
+    private final ChatSessionRepository chatSessionRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageArchiveRepository chatMessageArchiveRepository;
+    private final ChatMessageArchiveTextRepository chatMessageArchiveTextRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration idleDelay;
+    private final int batchSessions;
+    private final int chunkMessages;
+    private final int searchExcerptChars;
+
+    private final Counter archivedMessages;
+    private final Counter archivedBytes;
+    private final Counter compressedBytes;
+
+    @Autowired
+    public ChatArchiveService(ChatSessionRepository chatSessionRepository,
+                              ChatMessageRepository chatMessageRepository,
+                              ChatMessageArchiveRepository chatMessageArchiveRepository,
+                              ChatMessageArchiveTextRepository chatMessageArchiveTextRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.archive.enabled:true}") boolean enabled,
+                              @Value("${chat.archive.idle-days:30}") int idleDays,
+                              @Value("${chat.archive.batch-sessions:20}") int batchSessions,
+                              @Value("${chat.archive.chunk-messages:500}") int chunkMessages,
+                              @Value("${chat.archive.search-excerpt-chars:300}") int searchExcerptChars) {
+        this.chatSessionRepository = chatSessionRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatMessageArchiveRepository = chatMessageArchiveRepository;
+        this.chatMessageArchiveTextRepository = chatMessageArchiveTextRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.idleDelay = Duration.ofDays(idleDays);
+        this.batchSessions = batchSessions;
+        this.chunkMessages = Math.max(1, chunkMessages);
+        this.searchExcerptChars = searchExcerptChars;
+
+        this.archivedMessages = Counter.builder("chat.archive.messages").register(meterRegistry);
+        this.archivedBytes = Counter.builder("chat.archive.bytes").tag("form", "raw").register(meterRegistry);
+        this.compressedBytes = Counter.builder("chat.archive.bytes").tag("form", "compressed").register(meterRegistry);
+    }
+
+    /**
+     * Archive les sessions inactives par lots de chat.archive.batch-sessions, une transaction courte
+     * par session, jusqu'à épuisement des candidates
+     */
+    @Scheduled(fixedDelayString = "${chat.archive.interval-ms:3600000}", initialDelayString = "${chat.archive.initial-delay-ms:600000}")
+    public void archiveIdleSessions() {
+        if (!enabled) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(idleDelay);
+        int sessions = 0;
+        int messages = 0;
+        List<String> sessionIds;
+        do {
+            sessionIds = chatSessionRepository.findIdleSessionIds(cutoff, PageRequest.of(0, batchSessions));
+            for (String sessionId : sessionIds) {
+                try {
+                    Integer archived = transactionTemplate.execute(status -> archiveSession(sessionId, cutoff));
+                    messages += archived != null ? archived : 0;
+                    sessions++;
+                } catch (RuntimeException e) {
+                    System.err.println("Archivage de la session " + sessionId + " impossible: " + e.getMessage());
+                    return; // nouvel essai au prochain passage
+                }
+            }
+        } while (sessionIds.size() == batchSessions);
+        if (sessions > 0) {
+            System.out.println("Archivage: " + messages + " messages de " + sessions + " sessions inactives");
+        }
+    }
+
+    /**
+     * Déplace les messages antérieurs à cutoff dans de nouveaux blocs, à la suite des blocs existants,
+     * et en garde un extrait pour la recherche. La ligne de session reste verrouillée jusqu'à la fin
+     * de la transaction.
+     */
+    private int archiveSession(String sessionId, Instant cutoff) {
+        Optional<ChatSession> locked = chatSessionRepository.lockForArchiving(sessionId);
+        if (locked.isEmpty()) {
+            return 0; // supprimée entre-temps
+        }
+        List<ChatMessage> messages = chatMessageRepository.findArchivable(sessionId, cutoff);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        int chunkIndex = chatMessageArchiveRepository.findLastChunkIndex(sessionId) + 1;
+        for (int from = 0; from < messages.size(); from += chunkMessages) {
+            List<ChatMessage> chunk = messages.subList(from, Math.min(from + chunkMessages, messages.size()));
+            chatMessageArchiveRepository.save(ChatMessageArchive.builder()
+                    .sessionId(sessionId)
+                    .chunkIndex(chunkIndex++)
+                    .messageCount(chunk.size())
+                    .firstTimestamp(chunk.get(0).getTimestamp())
+                    .lastTimestamp(chunk.get(chunk.size() - 1).getTimestamp())
+                    .payload(compress(chunk))
+                    .build());
+        }
+        if (searchExcerptChars > 0) {
+            chatMessageArchiveTextRepository.saveAll(messages.stream()
+                    .map(message -> ChatMessageArchiveText.builder()
+                            .messageId(message.getId())
+                            .chatSession(locked.get())
+                            .role(message.getRole())
+                            .content(excerpt(message.getContent()))
+                            .timestamp(message.getTimestamp())
+                            .build())
+                    .collect(Collectors.toList()));
+        }
+        chatMessageRepository.deleteAllByIdInBatch(messages.stream().map(ChatMessage::getId).collect(Collectors.toList()));
+
+        String lastContent = messages.get(messages.size() - 1).getContent();
+        String preview = lastContent.length() > PREVIEW_CHARS ? lastContent.substring(0, PREVIEW_CHARS) : lastContent;
+        chatSessionRepository.recordArchivedMessages(sessionId, Instant.now(), messages.size(), preview);
+        archivedMessages.increment(messages.size());
+        return messages.size();
+    }
+
+    /**
+     * Messages de la session dans l'ordre chronologique, archivés compris. Pour une session jamais
+     * archivée, la liste lue dans chat_messages est renvoyée telle quelle.
+     */
+    public List<ChatMessage> withArchived(ChatSession chatSession, List<ChatMessage> hotMessages) {
+        if (chatSession.getArchivedAt() == null) {
+            return hotMessages;
+        }
+        List<ChatMessage> messages = new ArrayList<>();
+        for (ChatMessageArchive chunk : chatMessageArchiveRepository.findBySessionIdOrderByChunkIndexAsc(chatSession.getId())) {
+            for (ArchivedMessage archived : decompress(chunk.getPayload())) {
+                messages.add(archived.toMessage(chatSession));
+            }
+        }
+        messages.addAll(hotMessages);
+        messages.sort(Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId));
+        return messages;
+    }
+
+    /**
+     * Début du message, sans couper un caractère hors du plan multilingue de base
+     */
+    private String excerpt(String content) {
+        if (content.length() <= searchExcerptChars) {
+            return content;
+        }
+        int end = searchExcerptChars;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end);
+    }
+
+    /**
+     * Messages d'une session archivée postérieurs à la position (timestamp, id), blocs et messages restés
+     * dans chat_messages, dans l'ordre chronologique. Seuls les blocs qui se terminent au plus tôt à
+     * timestamp sont décompressés. Sans position, tous les messages de la session sont renvoyés.
+     */
+    public List<ChatMessage> messagesAfter(ChatSession chatSession, Instant timestamp, String id) {
+        String sessionId = chatSession.getId();
+        if (timestamp == null) {
+            return withArchived(chatSession, chatMessageRepository.findByChatSessionIdOrderByTimestampAscIdAsc(sessionId));
+        }
+        List<ChatMessage> messages = new ArrayList<>();
+        for (ChatMessageArchive chunk : chatMessageArchiveRepository
+                .findBySessionIdAndLastTimestampGreaterThanEqualOrderByChunkIndexAsc(sessionId, timestamp)) {
+            for (ArchivedMessage archived : decompress(chunk.getPayload())) {
+                if (compare(archived.timestamp(), archived.id(), timestamp, id) > 0) {
+                    messages.add(archived.toMessage(chatSession));
+                }
+            }
+        }
+        messages.addAll(chatMessageRepository.findAfterWatermark(sessionId, timestamp, id));
+        messages.sort(Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId));
+        return messages;
+    }
+
+    /**
+     * Au plus count messages archivés qui suivent la position (timestamp, id) dans l'ordre demandé,
+     * pour la pagination d'une session archivée. Les blocs sont chargés et décompressés un par un,
+     * à partir de la position, jusqu'à obtenir count messages. Sans position, la page part du début
+     * (oldestFirst) ou de la fin de l'archive.
+     */
+    public List<ChatMessage> archivedPage(ChatSession chatSession, Instant timestamp, String id,
+                                          int count, boolean oldestFirst) {
+        String sessionId = chatSession.getId();
+        List<Integer> chunkIndexes;
+        if (timestamp == null) {
+            chunkIndexes = new ArrayList<>(chatMessageArchiveRepository.findChunkIndexes(sessionId));
+            if (!oldestFirst) {
+                Collections.reverse(chunkIndexes);
+            }
+        } else {
+            chunkIndexes = oldestFirst
+                    ? chatMessageArchiveRepository.findChunkIndexesEndingFrom(sessionId, timestamp)
+                    : chatMessageArchiveRepository.findChunkIndexesStartingUntil(sessionId, timestamp);
+        }
+
+        List<ChatMessage> page = new ArrayList<>(count);
+        for (int chunkIndex : chunkIndexes) {
+            ChatMessageArchive chunk = chatMessageArchiveRepository
+                    .findById(new ChatMessageArchive.Key(sessionId, chunkIndex)).orElse(null);
+            if (chunk == null) {
+                continue; // supprimé entre les deux requêtes
+            }
+            List<ArchivedMessage> archived = decompress(chunk.getPayload());
+            for (int i = 0; i < archived.size() && page.size() < count; i++) {
+                ArchivedMessage message = archived.get(oldestFirst ? i : archived.size() - 1 - i);
+                int comparison = timestamp == null ? 0 : compare(message.timestamp(), message.id(), timestamp, id);
+                if (timestamp == null || (oldestFirst ? comparison > 0 : comparison < 0)) {
+                    page.add(message.toMessage(chatSession));
+                }
+            }
+            if (page.size() >= count) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Tous les messages d'une session archivée (blocs et messages restés dans chat_messages)
+     */
+    public List<ChatMessage> allMessages(ChatSession chatSession) {
+        return messagesAfter(chatSession, null, null);
+    }
+
+    /**
+     * Compare une position (timestamp, id) à une autre, dans l'ordre des curseurs de pagination
+     */
+    private static int compare(Instant timestamp, String id, Instant otherTimestamp, String otherId) {
+        int byTimestamp = timestamp.compareTo(otherTimestamp);
+        return byTimestamp != 0 ? byTimestamp : id.compareTo(otherId);
+    }
+
+    public void deleteArchives(String sessionId) {
+        chatMessageArchiveTextRepository.deleteBySessionId(sessionId);
+        chatMessageArchiveRepository.deleteBySessionId(sessionId);
+    }
+
+    private byte[] compress(List<ChatMessage> messages) {
+        List<ArchivedMessage> archived = messages.stream().map(ArchivedMessage::of).collect(Collectors.toList());
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(archived);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4);
+            try (OutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(json);
+            }
+            archivedBytes.increment(json.length);
+            compressedBytes.increment(buffer.size());
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Compression des messages impossible", e);
+        }
+    }
+
+    private List<ArchivedMessage> decompress(byte[] payload) {
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return objectMapper.readValue(gzip, new TypeReference<List<ArchivedMessage>>() { });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Bloc de messages archivés illisible", e);
+        }
+    }
+
+    /**
+     * Forme sérialisée d'un message dans un bloc d'archive
+     */
+    private record ArchivedMessage(String id, ChatMessage.MessageRole role, String content, Instant timestamp,
+                                   String messageType, String metadata, String model,
+                                   Integer promptTokens, Integer completionTokens) {
+
+        static ArchivedMessage of(ChatMessage message) {
+            return new ArchivedMessage(message.getId(), message.getRole(), message.getContent(), message.getTimestamp(),
+                    message.getMessageType(), message.getMetadata(), message.getModel(),
+                    message.getPromptTokens(), message.getCompletionTokens());
+        }
+
+        ChatMessage toMessage(ChatSession chatSession) {
+            return ChatMessage.builder()
+                    .id(id)
+                    .chatSession(chatSession)
+                    .role(role)
+                    .content(content)
+                    .timestamp(timestamp)
+                    .messageType(messageType)
+                    .metadata(metadata)
+                    .model(model)
+                    .promptTokens(promptTokens)
+                    .completionTokens(completionTokens)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.client.OpenRouterClient.Message;
+import com.skillup.chat.dto.ChatMessageRequest;
+import com.skillup.chat.model.ChatMessage;
+import com.skillup.chat.model.ChatSession;
+import com.skillup.chat.repository.ChatMessageRepository;
+import com.skillup.chat.repository.ChatSessionRepository;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Moteur de contexte des réponses IA.
+ * Le chargement se fait dans une transaction courte en lecture seule : aucune connexion n'est
+ * conservée pendant l'appel à OpenRouter. Seuls les messages postérieurs au résumé glissant de la
+ * session sont rechargés, et le prompt est ajusté à un budget de tokens : les messages qui n'y
+ * tiennent plus sont intégrés au résumé, persisté avec la réponse.
+ */
+@Service
+public class ChatContextService {
+
+    private final ChatSessionService chatSessionService;
+    private final ChatMessageService chatMessageService;
+    private final ChatSessionRepository chatSessionRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatArchiveService chatArchiveService;
+    private final int maxContextTokens;
+    private final int summaryMaxTokens;
+    private final int summaryExcerptChars;
+
+    @Autowired
+    public ChatContextService(ChatSessionService chatSessionService,
+                              ChatMessageService chatMessageService,
+                              ChatSessionRepository chatSessionRepository,
+                              ChatMessageRepository chatMessageRepository,
+                              ChatArchiveService chatArchiveService,
+                              @Value("${ai.context.max-tokens:3000}") int maxContextTokens,
+                              @Value("${ai.context.summary-max-tokens:600}") int summaryMaxTokens,
+                              @Value("${ai.context.summary-excerpt-chars:200}") int summaryExcerptChars) {
+        this.chatSessionService = chatSessionService;
+        this.chatMessageService = chatMessageService;
+        this.chatSessionRepository = chatSessionRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatArchiveService = chatArchiveService;
+        this.maxContextTokens = maxContextTokens;
+        this.summaryMaxTokens = summaryMaxTokens;
+        this.summaryExcerptChars = summaryExcerptChars;
+    }
+
+    @Transactional(readOnly = true)
+    public GenerationContext loadContext(String sessionId, String messageId, String userId) {
+        // Vérifier que l'utilisateur a accès à cette session
+        ChatSession chatSession = chatSessionService.getChatSessionById(sessionId, userId);
+
+        // Récupérer le message de l'utilisateur
+        ChatMessage userMessage = chatMessageRepository.findById(messageId)
+                .orElseThrow(() -> new NoSuchElementException("Message non trouvé avec l'ID: " + messageId));
+
+        // Vérifier que le message appartient à la session
+        if (!userMessage.getChatSession().getId().equals(sessionId)) {
+            throw new IllegalArgumentException("Le message n'appartient pas à cette session de chat");
+        }
+
+        return new GenerationContext(chatSession, userMessage, loadUnsummarizedHistory(chatSession));
+    }
+
+    /**
+     * Enregistre le message utilisateur et charge le contexte de la réponse dans la même transaction :
+     * la session n'est lue qu'une fois et le message sauvegardé est ajouté à l'historique sans relecture
+     */
+    @Transactional
+    public GenerationContext appendUserMessage(String sessionId, ChatMessageRequest request, String userId) {
+        ChatSession chatSession = chatSessionService.getChatSessionById(sessionId, userId);
+        List<ChatMessage> history = new ArrayList<>(loadUnsummarizedHistory(chatSession));
+
+        ChatMessage userMessage = chatMessageRepository.save(chatMessageService.buildUserMessage(chatSession, request));
+        history.add(userMessage);
+
+        // Les métadonnées typées de la requête évitent de relire le JSON qui vient d'être écrit
+        return new GenerationContext(chatSession, userMessage, history, request.getMetadata());
+    }
+
+    private List<ChatMessage> loadUnsummarizedHistory(ChatSession chatSession) {
+        Instant watermark = chatSession.getSummarizedUntil();
+        // Résumé antérieur à l'id du filigrane : les messages de même horodatage sont tous repris
+        String watermarkId = chatSession.getSummarizedUntilId() != null ? chatSession.getSummarizedUntilId() : "";
+        if (chatSession.getArchivedAt() != null) {
+            // Session archivée : seuls les blocs qui contiennent des messages non encore résumés sont décompressés
+            return chatArchiveService.messagesAfter(chatSession, watermark, watermarkId);
+        }
+        // Seuls les messages non encore résumés sont nécessaires
+        return watermark == null
+                ? chatMessageRepository.findByChatSessionIdOrderByTimestampAscIdAsc(chatSession.getId())
+                : chatMessageRepository.findAfterWatermark(chatSession.getId(), watermark, watermarkId);
+    }
+
+
+    /**
+     * Construit la fenêtre de conversation envoyée à l'IA : le résumé glissant puis les messages
+     * les plus récents qui tiennent dans le budget. Les plus anciens sont intégrés au résumé.
+     */
+    public List<Message> buildConversationWindow(GenerationContext context) {
+        List<ChatMessage> history = context.getHistory();
+        String summary = context.getChatSession().getContextSummary();
+
+        int available = maxContextTokens - Math.min(TokenEstimator.estimate(summary), summaryMaxTokens);
+        int used = 0;
+        int firstKept = history.size();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            int cost = TokenEstimator.estimateMessage(history.get(i).getContent());
+            // Le dernier message est toujours conservé, même s'il dépasse à lui seul le budget
+            if (used + cost > available && i < history.size() - 1) {
+                break;
+            }
+            used += cost;
+            firstKept = i;
+        }
+
+        if (firstKept > 0) {
+            StringBuilder folded = new StringBuilder(summary == null ? "" : summary);
+            for (int i = 0; i < firstKept; i++) {
+                ChatMessage msg = history.get(i);
+                String content = msg.getContent();
+                folded.append(msg.getRole().name()).append(": ")
+                      .append(content.length() > summaryExcerptChars
+                              ? content.substring(0, summaryExcerptChars) + "..."
+                              : content)
+                      .append('\n');
+            }
+            summary = trimToTokens(folded.toString(), summaryMaxTokens);
+            context.recordSummaryUpdate(summary, history.get(firstKept - 1));
+        }
+
+        List<Message> window = new ArrayList<>();
+        if (summary != null && !summary.isEmpty()) {
+            window.add(new Message("system", "Résumé de la conversation précédente:\n" + summary));
+        }
+        for (int i = firstKept; i < history.size(); i++) {
+            ChatMessage msg = history.get(i);
+            window.add(new Message(msg.getRole().name(), msg.getContent()));
+        }
+        return window;
+    }
+
+    /**
+     * Sauvegarde la réponse de l'IA et, si la fenêtre a glissé, le nouveau résumé de la session,
+     * dans une même transaction courte
+     */
+    @Transactional
+    public ChatMessage saveReply(GenerationContext context, String content, String model,
+                                 Integer promptTokens, Integer completionTokens) {
+        ChatMessage aiMessage = chatMessageRepository.save(ChatMessage.builder()
+                .chatSession(context.getChatSession())
+                .content(content)
+                .role(ChatMessage.MessageRole.assistant)
+                .model(model)
+                .promptTokens(promptTokens)
+                .completionTokens(completionTokens)
+                .build());
+
+        if (context.getSummaryWatermark() != null) {
+            chatSessionRepository.updateContextSummary(context.getChatSession().getId(),
+                    context.getUpdatedSummary(), context.getSummaryWatermark(), context.getSummaryWatermarkId());
+        }
+        return aiMessage;
+    }
+
+    /**
+     * Conserve la fin du résumé (les échanges les plus récents) dans la limite du budget
+     */
+    private static String trimToTokens(String summary, int maxTokens) {
+        String trimmed = summary;
+        while (TokenEstimator.estimate(trimmed) > maxTokens) {
+            int nextLine = trimmed.indexOf('\n');
+            if (nextLine < 0 || nextLine == trimmed.length() - 1) {
+                // Une seule ligne trop longue : on la tronque par le début
+                return trimmed.substring(Math.max(0, trimmed.length() - maxTokens * 4));
+            }
+            trimmed = trimmed.substring(nextLine + 1);
+        }
+        return trimmed;
+    }
+
+    /**
+     * Données détachées de la session JPA, utilisables hors transaction
+     */
+    @Getter
+    public static class GenerationContext {
+        private final ChatSession chatSession;
+        private final ChatMessage userMessage;
+        private final List<ChatMessage> history;
+        // Métadonnées déjà typées du message utilisateur, quand il vient d'être reçu (sinon null)
+        private final ChatMessageRequest.MessageMetadata userMetadata;
+        private String updatedSummary;
+        private Instant summaryWatermark;
+        private String summaryWatermarkId;
+
+        public GenerationContext(ChatSession chatSession, ChatMessage userMessage, List<ChatMessage> history) {
+            this(chatSession, userMessage, history, null);
+        }
+
+        public GenerationContext(ChatSession chatSession, ChatMessage userMessage, List<ChatMessage> history,
+                                 ChatMessageRequest.MessageMetadata userMetadata) {
+            this.chatSession = chatSession;
+            this.userMessage = userMessage;
+            this.history = history;
+            this.userMetadata = userMetadata;
+        }
+
+        void recordSummaryUpdate(String summary, ChatMessage lastSummarized) {
+            this.updatedSummary = summary;
+            this.summaryWatermark = lastSummarized.getTimestamp();
+            this.summaryWatermarkId = lastSummarized.getId();
+        }
+    }
+}
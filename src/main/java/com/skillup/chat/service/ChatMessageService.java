@@ -6,31 +6,52 @@ import com.skillup.chat.dto.ChatMessageRequest;
 import com.skillup.chat.model.ChatMessage;
 import com.skillup.chat.model.ChatSession;
 import com.skillup.chat.repository.ChatMessageRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 @Service
 public class ChatMessageService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final ChatMessageRepository chatMessageRepository;
     private final ChatSessionService chatSessionService;
+    private final ChatArchiveService chatArchiveService;
     private final ObjectMapper objectMapper;
 
     @Autowired
-    public ChatMessageService(ChatMessageRepository chatMessageRepository, ChatSessionService chatSessionService, ObjectMapper objectMapper) {
+    public ChatMessageService(ChatMessageRepository chatMessageRepository, ChatSessionService chatSessionService,
+                              ChatArchiveService chatArchiveService, ObjectMapper objectMapper) {
         this.chatMessageRepository = chatMessageRepository;
         this.chatSessionService = chatSessionService;
+        this.chatArchiveService = chatArchiveService;
         this.objectMapper = objectMapper;
     }
 
     @Transactional
     public ChatMessage createUserMessage(String sessionId, ChatMessageRequest request, String userId) {
         ChatSession chatSession = chatSessionService.getChatSessionById(sessionId, userId);
-        
+        return chatMessageRepository.save(buildUserMessage(chatSession, request));
+    }
+
+    /**
+     * Construit (sans le sauvegarder) le message utilisateur d'une session déjà chargée
+     */
+    ChatMessage buildUserMessage(ChatSession chatSession, ChatMessageRequest request) {
         ChatMessage.ChatMessageBuilder builder = ChatMessage.builder()
                 .chatSession(chatSession)
                 .content(request.getContent())
@@ -51,8 +72,7 @@ public class ChatMessageService {
             }
         }
         
-        ChatMessage chatMessage = builder.build();
-        return chatMessageRepository.save(chatMessage);
+        return builder.build();
     }
 
     @Transactional(readOnly = true)
@@ -64,13 +84,124 @@ public class ChatMessageService {
     @Transactional(readOnly = true)
     public List<ChatMessage> getSessionMessages(String sessionId, String userId) {
         // Vérifie que l'utilisateur a accès à cette session
-        chatSessionService.getChatSessionById(sessionId, userId);
+        ChatSession chatSession = chatSessionService.getChatSessionById(sessionId, userId);
         
-        return chatMessageRepository.findByChatSessionIdOrderByTimestampAsc(sessionId);
+        // Les messages archivés sont réintégrés en mémoire, dans l'ordre chronologique
+        return chatArchiveService.withArchived(chatSession,
+                chatMessageRepository.findByChatSessionIdOrderByTimestampAscIdAsc(sessionId));
+    }
+
+    /**
+     * Page de messages d'une session, après vérification de l'accès
+     */
+    @Transactional(readOnly = true)
+    public MessagePage getSessionMessagesPage(String sessionId, String userId, String cursor, int limit, PageOrder order) {
+        ChatSession chatSession = chatSessionService.getChatSessionById(sessionId, userId);
+        return findMessagesPage(chatSession, cursor, limit, order);
+    }
+
+    /**
+     * Pagination par curseur sur (timestamp, id) : chaque page est lue directement dans l'index,
+     * sans OFFSET, quelle que soit sa position dans l'historique.
+     * Pour une session archivée, la page est complétée par les blocs d'archive qui suivent le curseur,
+     * décompressés un par un, puis fusionnée en mémoire avec les mêmes curseurs.
+     * L'accès à la session doit avoir été vérifié par l'appelant.
+     */
+    @Transactional(readOnly = true)
+    public MessagePage findMessagesPage(ChatSession chatSession, String cursor, int limit, PageOrder order) {
+        String sessionId = chatSession.getId();
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Un élément de plus pour savoir s'il reste des messages après cette page
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+        
+        MessageCursor position = cursor == null || cursor.isEmpty() ? null : MessageCursor.decode(cursor);
+        List<ChatMessage> messages;
+        if (position == null) {
+            messages = order == PageOrder.OLDEST_FIRST
+                    ? chatMessageRepository.findOldest(sessionId, pageable)
+                    : chatMessageRepository.findNewest(sessionId, pageable);
+        } else {
+            messages = order == PageOrder.OLDEST_FIRST
+                    ? chatMessageRepository.findNewerThan(sessionId, position.timestamp(), position.id(), pageable)
+                    : chatMessageRepository.findOlderThan(sessionId, position.timestamp(), position.id(), pageable);
+        }
+        if (chatSession.getArchivedAt() != null) {
+            List<ChatMessage> candidates = new ArrayList<>(chatArchiveService.archivedPage(chatSession,
+                    position != null ? position.timestamp() : null, position != null ? position.id() : null,
+                    pageSize + 1, order == PageOrder.OLDEST_FIRST));
+            candidates.addAll(messages);
+            candidates.sort(Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId));
+            messages = pageInMemory(candidates, position, pageSize + 1, order);
+        }
+        
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = messages.subList(0, pageSize);
+        }
+        String nextCursor = hasMore ? MessageCursor.of(messages.get(messages.size() - 1)).encode() : null;
+        return new MessagePage(messages, nextCursor, hasMore);
+    }
+
+    private static List<ChatMessage> pageInMemory(List<ChatMessage> chronological, MessageCursor position,
+                                                  int count, PageOrder order) {
+        List<ChatMessage> page = new ArrayList<>(count);
+        boolean oldestFirst = order == PageOrder.OLDEST_FIRST;
+        for (int i = 0; i < chronological.size() && page.size() < count; i++) {
+            ChatMessage message = chronological.get(oldestFirst ? i : chronological.size() - 1 - i);
+            int comparison = position == null ? 0 : position.compareTo(message);
+            if (position == null || (oldestFirst ? comparison < 0 : comparison > 0)) {
+                page.add(message);
+            }
+        }
+        return page;
     }
 
     @Transactional
     public ChatMessage saveMessage(ChatMessage message) {
         return chatMessageRepository.save(message);
     }
+
+    public enum PageOrder {
+        NEWEST_FIRST, OLDEST_FIRST
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class MessagePage {
+        private final List<ChatMessage> messages;
+        private final String nextCursor;
+        private final boolean hasMore;
+    }
+
+    /**
+     * Position opaque dans l'historique : (timestamp, id) du dernier message renvoyé
+     */
+    private record MessageCursor(Instant timestamp, String id) {
+
+        static MessageCursor of(ChatMessage message) {
+            return new MessageCursor(message.getTimestamp(), message.getId());
+        }
+
+        static MessageCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+                return new MessageCursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), parts[2]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Curseur de pagination invalide");
+            }
+        }
+
+        /**
+         * Compare la position du curseur à un message, selon l'ordre (timestamp, id) des requêtes
+         */
+        int compareTo(ChatMessage message) {
+            int byTimestamp = timestamp.compareTo(message.getTimestamp());
+            return byTimestamp != 0 ? byTimestamp : id.compareTo(message.getId());
+        }
+
+        String encode() {
+            String raw = timestamp.getEpochSecond() + ":" + timestamp.getNano() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+    }
 }
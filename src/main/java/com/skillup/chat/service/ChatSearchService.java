@@ -0,0 +1,168 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.dto.ChatSearchResponse;
+import com.skillup.chat.model.ChatMessage;
+import com.skillup.chat.model.ChatMessageArchiveText;
+import com.skillup.chat.repository.ChatMessageArchiveTextRepository;
+import com.skillup.chat.repository.ChatMessageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Recherche dans l'historique de chat d'un utilisateur, via les index FULLTEXT de chat_messages.content
+ * et du texte des messages archivés (chat_message_archive_texts) : résultats classés par pertinence,
+ * paginés, avec un extrait où les termes trouvés sont surlignés.
+ */
+@Service
+public class ChatSearchService {
+
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_TERMS = 10;
+    private static final int SNIPPET_CHARS = 200;
+    // Opérateurs du mode booléen de MySQL, retirés de la saisie de l'utilisateur
+    private static final Pattern BOOLEAN_OPERATORS = Pattern.compile("[+\\-<>()~*\"@]");
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageArchiveTextRepository chatMessageArchiveTextRepository;
+    private final int minTermLength;
+
+    @Autowired
+    public ChatSearchService(ChatMessageRepository chatMessageRepository,
+                             ChatMessageArchiveTextRepository chatMessageArchiveTextRepository,
+                             @Value("${chat.search.min-term-length:3}") int minTermLength) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatMessageArchiveTextRepository = chatMessageArchiveTextRepository;
+        // Les mots plus courts que innodb_ft_min_token_size ne sont pas indexés
+        this.minTermLength = minTermLength;
+    }
+
+    @Transactional(readOnly = true)
+    public ChatSearchResponse search(String userId, String query, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pageIndex = Math.max(0, page);
+        List<String> terms = terms(query);
+
+        ChatSearchResponse response = new ChatSearchResponse();
+        response.setQuery(query);
+        response.setPage(pageIndex);
+        response.setSize(pageSize);
+        if (terms.isEmpty()) {
+            return response;
+        }
+
+        // Tous les termes sont requis, en préfixe : "expliq" trouve "explique" et "explication"
+        String booleanQuery = terms.stream().map(term -> "+" + term + "*").collect(Collectors.joining(" "));
+        // Une ligne de plus que la page pour savoir s'il y a une suite, sans COUNT
+        List<Object[]> rows = chatMessageRepository.searchContent(userId, booleanQuery, pageSize + 1, pageIndex * pageSize);
+        response.setHasMore(rows.size() > pageSize);
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+        }
+        if (rows.isEmpty()) {
+            return response;
+        }
+
+        List<String> ids = new ArrayList<>();
+        List<String> archivedIds = new ArrayList<>();
+        for (Object[] row : rows) {
+            (((Number) row[2]).intValue() != 0 ? archivedIds : ids).add((String) row[0]);
+        }
+        Map<String, ChatMessage> messages = ids.isEmpty() ? Map.of() : chatMessageRepository.findWithSessionByIdIn(ids)
+                .stream().collect(Collectors.toMap(ChatMessage::getId, Function.identity()));
+        Map<String, ChatMessageArchiveText> archivedMessages = archivedIds.isEmpty() ? Map.of()
+                : chatMessageArchiveTextRepository.findWithSessionByMessageIdIn(archivedIds).stream()
+                        .collect(Collectors.toMap(ChatMessageArchiveText::getMessageId, Function.identity()));
+        Pattern highlight = highlightPattern(terms);
+        for (Object[] row : rows) {
+            double score = ((Number) row[1]).doubleValue();
+            ChatMessage message = messages.get((String) row[0]);
+            ChatMessageArchiveText archived = archivedMessages.get((String) row[0]);
+            if (message != null) {
+                response.getResults().add(new ChatSearchResponse.Hit(
+                        message.getChatSession().getId(),
+                        message.getChatSession().getTitle(),
+                        message.getId(),
+                        message.getRole().name(),
+                        message.getTimestamp(),
+                        score,
+                        snippet(message.getContent(), highlight)));
+            } else if (archived != null) {
+                response.getResults().add(new ChatSearchResponse.Hit(
+                        archived.getChatSession().getId(),
+                        archived.getChatSession().getTitle(),
+                        archived.getMessageId(),
+                        archived.getRole().name(),
+                        archived.getTimestamp(),
+                        score,
+                        snippet(archived.getContent(), highlight)));
+            }
+            // sinon supprimé entre les deux requêtes
+        }
+        return response;
+    }
+
+    private List<String> terms(String query) {
+        if (query == null) {
+            return List.of();
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : BOOLEAN_OPERATORS.matcher(query).replaceAll(" ").trim().split("\\s+")) {
+            if (word.length() >= minTermLength && terms.size() < MAX_TERMS) {
+                terms.add(word.toLowerCase(Locale.ROOT));
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    private static Pattern highlightPattern(List<String> terms) {
+        String alternatives = terms.stream().map(Pattern::quote).collect(Collectors.joining("|"));
+        // Préfixes de mots, comme dans la requête MySQL
+        return Pattern.compile("(?<![\\p{L}\\p{N}])(?:" + alternatives + ")[\\p{L}\\p{N}]*",
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    /**
+     * Extrait centré sur la première occurrence, échappé en HTML, occurrences entourées de <mark>
+     */
+    private static String snippet(String content, Pattern highlight) {
+        Matcher first = highlight.matcher(content);
+        int center = first.find() ? first.start() : 0;
+        int start = Math.max(0, center - SNIPPET_CHARS / 3);
+        int end = Math.min(content.length(), start + SNIPPET_CHARS);
+        String excerpt = content.substring(start, end);
+
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append("…");
+        }
+        Matcher matcher = highlight.matcher(excerpt);
+        int last = 0;
+        while (matcher.find()) {
+            snippet.append(escapeHtml(excerpt.substring(last, matcher.start())))
+                    .append("<mark>").append(escapeHtml(matcher.group())).append("</mark>");
+            last = matcher.end();
+        }
+        snippet.append(escapeHtml(excerpt.substring(last)));
+        if (end < content.length()) {
+            snippet.append("…");
+        }
+        return snippet.toString();
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -1,6 +1,7 @@
 package com.skillup.chat.service;
 
 import com.skillup.chat.dto.ChatSessionRequest;
+import com.skillup.chat.dto.ChatSessionSummaryResponse;
 import com.skillup.chat.model.ChatSession;
 import com.skillup.chat.repository.ChatSessionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,10 +16,12 @@ import java.util.NoSuchElementException;
 public class ChatSessionService {
 
     private final ChatSessionRepository chatSessionRepository;
+    private final ChatArchiveService chatArchiveService;
 
     @Autowired
-    public ChatSessionService(ChatSessionRepository chatSessionRepository) {
+    public ChatSessionService(ChatSessionRepository chatSessionRepository, ChatArchiveService chatArchiveService) {
         this.chatSessionRepository = chatSessionRepository;
+        this.chatArchiveService = chatArchiveService;
     }
 
     @Transactional
@@ -35,11 +38,11 @@ public class ChatSessionService {
     }
     
     /**
-     * Recharge une session de chat depuis la base de données
+     * Recharge une session de chat depuis la base de données, avec ses messages
      */
     @Transactional(readOnly = true)
     public ChatSession refreshChatSession(String sessionId) {
-        return chatSessionRepository.findById(sessionId)
+        return chatSessionRepository.findWithMessagesById(sessionId)
                 .orElseThrow(() -> new NoSuchElementException("Session de chat non trouvée avec l'ID: " + sessionId));
     }
 
@@ -60,9 +63,15 @@ public class ChatSessionService {
         return chatSessionRepository.findByUserIdOrderByUpdatedAtDesc(userId);
     }
 
+    @Transactional(readOnly = true)
+    public List<ChatSessionSummaryResponse> getUserChatSessionSummaries(String userId) {
+        return chatSessionRepository.findSummariesByUserId(userId);
+    }
+
     @Transactional
     public void deleteChatSession(String id, String userId) {
         ChatSession chatSession = getChatSessionById(id, userId);
+        chatArchiveService.deleteArchives(id);
         chatSessionRepository.delete(chatSession);
     }
 }
@@ -0,0 +1,11 @@
+package com.skillup.chat.service;
+
+/**
+ * Génération interrompue avant son terme : plus personne n'attend la réponse, elle n'est pas enregistrée
+ */
+public class GenerationCancelledException extends RuntimeException {
+
+    public GenerationCancelledException(String reason) {
+        super("Génération annulée (" + reason + ")");
+    }
+}
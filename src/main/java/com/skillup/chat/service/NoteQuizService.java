@@ -0,0 +1,257 @@
+package com.skillup.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillup.chat.client.ModelRouter;
+import com.skillup.chat.client.OpenRouterClient.Message;
+import com.skillup.notes.model.Note;
+import com.skillup.notes.model.Quiz;
+import com.skillup.notes.model.QuizQuestion;
+import com.skillup.notes.repository.NoteRepository;
+import com.skillup.notes.repository.QuizRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Quiz des notes, générés à l'avance par une tâche périodique et enregistrés sous forme structurée
+ * (Quiz / QuizQuestion) avec l'empreinte du contenu dont ils sont tirés. Un quiz n'est régénéré que
+ * lorsque la note change ; l'action "quiz" du chat et GET /notes/{id}/quiz le servent depuis la base.
+ */
+@Service
+public class NoteQuizService {
+
+    private static final int MAX_OPTIONS = 6;
+
+    private final NoteRepository noteRepository;
+    private final QuizRepository quizRepository;
+    private final ModelRouter modelRouter;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int questionCount;
+
+    private final CancellationSignal shutdown = new CancellationSignal();
+    private final PacedBatch batch;
+
+    private final Counter generated;
+    private final Counter servedInChat;
+    private final Counter failures;
+    private final Counter tokens;
+
+    @Autowired
+    public NoteQuizService(NoteRepository noteRepository, QuizRepository quizRepository, ModelRouter modelRouter,
+                           ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${ai.note-quiz.enabled:true}") boolean enabled,
+                           @Value("${ai.note-quiz.batch-size:50}") int batchSize,
+                           @Value("${ai.note-quiz.questions:5}") int questionCount,
+                           @Value("${ai.note-quiz.concurrency:2}") int concurrency,
+                           @Value("${ai.note-quiz.requests-per-minute:10}") int requestsPerMinute) {
+        this.noteRepository = noteRepository;
+        this.quizRepository = quizRepository;
+        this.modelRouter = modelRouter;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.questionCount = questionCount;
+        this.batch = new PacedBatch(concurrency, requestsPerMinute, shutdown);
+
+        this.generated = Counter.builder("ai.note-quiz.generated").register(meterRegistry);
+        this.servedInChat = Counter.builder("ai.note-quiz.served").tag("channel", "chat").register(meterRegistry);
+        this.failures = Counter.builder("ai.note-quiz.failures").register(meterRegistry);
+        this.tokens = Counter.builder("ai.note-quiz.tokens").register(meterRegistry);
+        Gauge.builder("ai.note-quiz.in-flight", batch, PacedBatch::inFlight).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${ai.note-quiz.interval-ms:300000}",
+               initialDelayString = "${ai.note-quiz.initial-delay-ms:180000}")
+    public void generatePendingQuizzes() {
+        if (!enabled || shutdown.isCancelled()) {
+            return;
+        }
+        List<String> noteIds = quizRepository.findNoteIdsNeedingQuiz(PageRequest.of(0, batchSize));
+        if (noteIds.isEmpty()) {
+            return;
+        }
+        batch.run(noteIds, this::generate, (noteId, error) -> {
+            failures.increment();
+            System.err.println("Quiz de la note " + noteId + " impossible: " + error.getMessage());
+        });
+    }
+
+    /**
+     * Quiz déjà généré pour la note de l'utilisateur, mis en forme pour une réponse du chat.
+     * Vide si le quiz n'existe pas encore ou ne correspond pas au contenu envoyé.
+     */
+    public Optional<StoredQuiz> findForChat(String noteId, String userEmail, String noteTitle, String noteContent) {
+        Optional<Quiz> quiz = quizRepository.findCurrentForUser(noteId, userEmail);
+        if (quiz.isEmpty() || quiz.get().getQuestions().isEmpty()) {
+            return Optional.empty();
+        }
+        if (noteContent != null && !Note.hashOf(noteTitle, noteContent).equals(quiz.get().getContentHash())) {
+            return Optional.empty();
+        }
+        servedInChat.increment();
+        return Optional.of(new StoredQuiz(render(noteTitle, quiz.get()), quiz.get().getModel()));
+    }
+
+    private CompletableFuture<Void> generate(String noteId) {
+        Optional<Note> found = noteRepository.findById(noteId);
+        if (found.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String title = found.get().getTitle();
+        String content = found.get().getContent();
+        String hash = Note.hashOf(title, content);
+
+        return modelRouter.complete(prompt(title, content), shutdown,
+                usage -> tokens.increment(usage.promptTokens() + usage.completionTokens())).thenAccept(completion -> {
+            tokens.increment(completion.promptTokens() + completion.completionTokens());
+            List<QuizQuestion> questions;
+            try {
+                questions = parse(completion.content());
+            } catch (IllegalStateException e) {
+                // Enregistré en base : la note ne revient plus dans les lots tant que son contenu ne change pas
+                transactionTemplate.execute(status -> noteRepository.recordQuizFailure(noteId, hash));
+                throw e;
+            }
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> store(noteId, hash, completion.model(), questions)))) {
+                generated.increment();
+            }
+        });
+    }
+
+    /**
+     * Remplace le quiz de la note, sauf si elle a changé ou disparu pendant la génération
+     */
+    private boolean store(String noteId, String hash, String model, List<QuizQuestion> questions) {
+        Optional<Note> note = noteRepository.findById(noteId);
+        if (note.isEmpty() || !hash.equals(Note.hashOf(note.get().getTitle(), note.get().getContent()))) {
+            return false;
+        }
+        // Notes antérieures à l'empreinte : elle est renseignée pour que le quiz soit reconnu à jour
+        noteRepository.backfillContentHash(noteId, hash);
+        quizRepository.deleteByNoteId(noteId);
+
+        Quiz quiz = new Quiz();
+        quiz.setNote(note.get());
+        quiz.setContentHash(hash);
+        quiz.setModel(model);
+        for (QuizQuestion question : questions) {
+            question.setQuiz(quiz);
+            quiz.getQuestions().add(question);
+        }
+        quizRepository.save(quiz);
+        return true;
+    }
+
+    private List<Message> prompt(String title, String content) {
+        String systemPrompt = "Tu es un assistant qui crée des quiz basés sur des notes. " +
+                "Voici le contenu de la note intitulée '" + title + "' que tu dois utiliser pour créer un quiz: \n\n" +
+                content + "\n\nCrée un quiz de " + questionCount + " questions à choix multiples. " +
+                "Réponds uniquement avec un objet JSON de la forme " +
+                "{\"questions\": [{\"question\": \"...\", \"options\": [\"...\", \"...\", \"...\", \"...\"], " +
+                "\"answer\": 0, \"explanation\": \"...\"}]}, où answer est l'indice (à partir de 0) de la bonne option.";
+        return List.of(new Message("system", systemPrompt));
+    }
+
+    /**
+     * Lit le quiz renvoyé par le modèle, en tolérant un texte ou un bloc de code autour de l'objet JSON
+     */
+    private List<QuizQuestion> parse(String content) {
+        int start = content.indexOf('{');
+        int end = content.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            throw new IllegalStateException("Aucun objet JSON dans la réponse du modèle");
+        }
+        GeneratedQuiz generatedQuiz;
+        try {
+            generatedQuiz = objectMapper.readValue(content.substring(start, end + 1), GeneratedQuiz.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Quiz illisible: " + e.getOriginalMessage());
+        }
+
+        List<QuizQuestion> questions = new ArrayList<>();
+        if (generatedQuiz.questions() != null) {
+            for (GeneratedQuestion generatedQuestion : generatedQuiz.questions()) {
+                if (generatedQuestion == null || generatedQuestion.question() == null
+                        || generatedQuestion.question().isBlank() || generatedQuestion.options() == null
+                        || generatedQuestion.options().size() < 2 || generatedQuestion.options().size() > MAX_OPTIONS
+                        || generatedQuestion.answer() == null || generatedQuestion.answer() < 0
+                        || generatedQuestion.answer() >= generatedQuestion.options().size()) {
+                    continue; // question incomplète : ignorée
+                }
+                QuizQuestion question = new QuizQuestion();
+                question.setPosition(questions.size());
+                question.setQuestion(generatedQuestion.question().trim());
+                question.setOptions(generatedQuestion.options().stream().map(String::trim).toList());
+                question.setAnswerIndex(generatedQuestion.answer());
+                question.setExplanation(generatedQuestion.explanation());
+                questions.add(question);
+            }
+        }
+        if (questions.isEmpty()) {
+            throw new IllegalStateException("Le quiz généré ne contient aucune question exploitable");
+        }
+        return questions;
+    }
+
+    private static String render(String noteTitle, Quiz quiz) {
+        StringBuilder text = new StringBuilder("Quiz");
+        if (noteTitle != null && !noteTitle.isBlank()) {
+            text.append(" : ").append(noteTitle);
+        }
+        text.append("\n\n");
+        List<QuizQuestion> questions = quiz.getQuestions();
+        for (int i = 0; i < questions.size(); i++) {
+            QuizQuestion question = questions.get(i);
+            text.append(i + 1).append(". ").append(question.getQuestion()).append('\n');
+            for (int option = 0; option < question.getOptions().size(); option++) {
+                text.append("   ").append((char) ('a' + option)).append(") ")
+                    .append(question.getOptions().get(option)).append('\n');
+            }
+            text.append('\n');
+        }
+        text.append("Réponses :\n");
+        for (int i = 0; i < questions.size(); i++) {
+            QuizQuestion question = questions.get(i);
+            text.append(i + 1).append(". ").append((char) ('a' + question.getAnswerIndex())).append(") ")
+                .append(question.getOptions().get(question.getAnswerIndex()));
+            if (question.getExplanation() != null && !question.getExplanation().isBlank()) {
+                text.append(" — ").append(question.getExplanation().trim());
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    @PreDestroy
+    public void stop() {
+        shutdown.cancel("shutdown");
+    }
+
+    public record StoredQuiz(String content, String model) {
+    }
+
+    private record GeneratedQuiz(List<GeneratedQuestion> questions) {
+    }
+
+    private record GeneratedQuestion(String question, List<String> options, Integer answer, String explanation) {
+    }
+}
@@ -0,0 +1,146 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.client.ModelRouter;
+import com.skillup.chat.client.OpenRouterClient.Message;
+import com.skillup.notes.model.Note;
+import com.skillup.notes.repository.NoteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Résumés des notes générés en tâche de fond et enregistrés sur la note, pour que leur lecture soit une
+ * simple lecture de colonne. Une tâche périodique reprend les notes sans résumé ou modifiées depuis
+ * (empreinte du contenu différente) : l'état est en base, une interruption reprend au passage suivant.
+ * Les générations sont limitées en parallèle et espacées pour ne pas concurrencer le chat sur OpenRouter.
+ */
+@Service
+public class NoteSummaryService {
+
+    private static final String ACTION = "summarize";
+
+    private final NoteRepository noteRepository;
+    private final ModelRouter modelRouter;
+    private final AIResponseCache aiResponseCache;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    // Annulé à l'arrêt de l'application : les appels en cours sont interrompus, les notes restent à traiter
+    private final CancellationSignal shutdown = new CancellationSignal();
+    private final PacedBatch batch;
+
+    private final Counter generated;
+    private final Counter servedFromCache;
+    private final Counter outdated;
+    private final Counter failures;
+    private final Counter tokens;
+
+    @Autowired
+    public NoteSummaryService(NoteRepository noteRepository, ModelRouter modelRouter, AIResponseCache aiResponseCache,
+                              PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                              @Value("${ai.note-summary.enabled:true}") boolean enabled,
+                              @Value("${ai.note-summary.batch-size:50}") int batchSize,
+                              @Value("${ai.note-summary.concurrency:2}") int concurrency,
+                              @Value("${ai.note-summary.requests-per-minute:10}") int requestsPerMinute) {
+        this.noteRepository = noteRepository;
+        this.modelRouter = modelRouter;
+        this.aiResponseCache = aiResponseCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.batch = new PacedBatch(concurrency, requestsPerMinute, shutdown);
+
+        this.generated = Counter.builder("ai.note-summary.generated").tag("source", "model").register(meterRegistry);
+        this.servedFromCache = Counter.builder("ai.note-summary.generated").tag("source", "cache").register(meterRegistry);
+        this.outdated = Counter.builder("ai.note-summary.outdated").register(meterRegistry);
+        this.failures = Counter.builder("ai.note-summary.failures").register(meterRegistry);
+        this.tokens = Counter.builder("ai.note-summary.tokens").register(meterRegistry);
+        Gauge.builder("ai.note-summary.in-flight", batch, PacedBatch::inFlight).register(meterRegistry);
+    }
+
+    /**
+     * Traite au plus batch-size notes à résumer, concurrency à la fois et au plus requests-per-minute
+     * démarrages par minute. Le passage s'arrête au premier échec d'OpenRouter : les notes restantes
+     * attendent le passage suivant plutôt que d'insister sur un service indisponible.
+     */
+    @Scheduled(fixedDelayString = "${ai.note-summary.interval-ms:300000}",
+               initialDelayString = "${ai.note-summary.initial-delay-ms:120000}")
+    public void summarizePendingNotes() {
+        if (!enabled || shutdown.isCancelled()) {
+            return;
+        }
+        List<String> noteIds = noteRepository.findIdsNeedingAiSummary(PageRequest.of(0, batchSize));
+        if (noteIds.isEmpty()) {
+            return;
+        }
+
+        batch.run(noteIds, this::summarize, (noteId, error) -> {
+            failures.increment();
+            System.err.println("Résumé de la note " + noteId + " impossible: " + error.getMessage());
+        });
+    }
+
+    private CompletableFuture<Void> summarize(String noteId) {
+        Optional<Note> found = noteRepository.findById(noteId);
+        if (found.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String title = found.get().getTitle();
+        String content = found.get().getContent();
+        String hash = Note.hashOf(title, content);
+
+        // Même clé que l'action "summarize" du chat : un résumé demandé en conversation est réutilisé, et inversement
+        String cacheKey = aiResponseCache.key(ACTION, modelRouter.primaryModel(), title, content);
+        Optional<String> cached = aiResponseCache.get(cacheKey);
+        if (cached.isPresent()) {
+            servedFromCache.increment();
+            store(noteId, cached.get(), hash);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return modelRouter.complete(prompt(title, content), shutdown,
+                usage -> tokens.increment(usage.promptTokens() + usage.completionTokens())).thenAccept(completion -> {
+            tokens.increment(completion.promptTokens() + completion.completionTokens());
+            if (completion.model().equals(modelRouter.primaryModel())) {
+                aiResponseCache.put(cacheKey, ACTION, completion.model(), completion.content());
+            }
+            generated.increment();
+            store(noteId, completion.content(), hash);
+        });
+    }
+
+    private void store(String noteId, String summary, String hash) {
+        Integer updated = transactionTemplate.execute(status ->
+                noteRepository.recordAiSummary(noteId, summary, hash, LocalDateTime.now()));
+        if (updated == null || updated == 0) {
+            // Note modifiée ou supprimée pendant la génération : elle sera reprise au passage suivant
+            outdated.increment();
+        }
+    }
+
+    private static List<Message> prompt(String title, String content) {
+        String systemPrompt = "Tu es un assistant qui aide à résumer des notes. " +
+                "Voici le contenu de la note intitulée '" + title + "' que tu dois résumer: \n\n" + content +
+                "\n\nRésume cette note de manière concise et claire.";
+        return List.of(new Message("system", systemPrompt));
+    }
+
+    @PreDestroy
+    public void stop() {
+        shutdown.cancel("shutdown");
+    }
+}
@@ -0,0 +1,82 @@
+package com.skillup.chat.service;
+
+import com.skillup.chat.client.OpenRouterException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Exécution des générations IA de tâche de fond (résumés, quiz) : au plus concurrency à la fois,
+ * démarrages espacés pour rester sous requestsPerMinute, arrêt au premier échec d'OpenRouter
+ * ou à l'annulation de shutdown
+ */
+class PacedBatch {
+
+    private final int concurrency;
+    private final long minIntervalNanos;
+    private final CancellationSignal shutdown;
+    private final Semaphore inFlight;
+
+    PacedBatch(int concurrency, int requestsPerMinute, CancellationSignal shutdown) {
+        this.concurrency = Math.max(1, concurrency);
+        this.minIntervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, requestsPerMinute);
+        this.shutdown = shutdown;
+        this.inFlight = new Semaphore(this.concurrency);
+    }
+
+    int inFlight() {
+        return concurrency - inFlight.availablePermits();
+    }
+
+    /**
+     * Lance task pour chaque identifiant et attend la fin des tâches lancées.
+     * Les échecs sont transmis à onFailure ; les identifiants restants attendent le passage suivant
+     * dès qu'OpenRouter échoue, plutôt que d'insister sur un service indisponible.
+     */
+    void run(List<String> ids, Function<String, CompletableFuture<Void>> task, BiConsumer<String, Throwable> onFailure) {
+        AtomicBoolean gatewayFailed = new AtomicBoolean();
+        long nextStart = System.nanoTime();
+        try {
+            for (String id : ids) {
+                inFlight.acquire();
+                if (gatewayFailed.get() || shutdown.isCancelled()) {
+                    inFlight.release();
+                    break;
+                }
+                long wait = nextStart - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                nextStart = System.nanoTime() + minIntervalNanos;
+
+                CompletableFuture<Void> result;
+                try {
+                    result = task.apply(id);
+                } catch (RuntimeException e) {
+                    result = CompletableFuture.failedFuture(e);
+                }
+                result.whenComplete((ignored, ex) -> {
+                    inFlight.release();
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        if (cause instanceof OpenRouterException) {
+                            gatewayFailed.set(true);
+                        }
+                        onFailure.accept(id, cause);
+                    }
+                });
+            }
+            // Attendre la fin des générations en cours avant de rendre la main au planificateur
+            inFlight.acquire(concurrency);
+            inFlight.release(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
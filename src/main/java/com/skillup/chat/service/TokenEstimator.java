@@ -0,0 +1,37 @@
+package com.skillup.chat.service;
+
+/**
+ * Estimation locale du nombre de tokens d'un texte, sans tokenizer du modèle.
+ * Pour du français ou de l'anglais, un token correspond en moyenne à ~4 caractères
+ * ou ~0,75 mot : on retient la plus pessimiste des deux estimations.
+ */
+public final class TokenEstimator {
+
+    // Coût fixe d'un message dans le format chat (rôle, séparateurs)
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean whitespace = Character.isWhitespace(text.charAt(i));
+            if (!whitespace && !inWord) {
+                words++;
+            }
+            inWord = !whitespace;
+        }
+        int byChars = (text.length() + 3) / 4;
+        int byWords = (words * 4 + 2) / 3;
+        return Math.max(byChars, byWords);
+    }
+
+    public static int estimateMessage(String content) {
+        return estimate(content) + MESSAGE_OVERHEAD;
+    }
+}
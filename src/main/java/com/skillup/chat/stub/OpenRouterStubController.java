@@ -0,0 +1,178 @@
+package com.skillup.chat.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skillup.chat.client.OpenRouterClient.Message;
+import com.skillup.chat.client.OpenRouterClient.OpenRouterRequest;
+import com.skillup.chat.service.TokenEstimator;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Doublure locale de l'API chat/completions d'OpenRouter, active avec le profil "openrouter-stub".
+ * Elle permet de faire tourner (et de charger) le chat sans consommer de tokens :
+ * openrouter.api.url=http://localhost:8080/openrouter-stub
+ *
+ * Latence tirée d'une loi log-normale (médiane et p95 configurables), taux d'erreur, nombre de tokens
+ * produits et cadence du streaming sont réglables. Aucune requête ne bloque un thread Tomcat.
+ */
+@RestController
+@RequestMapping("/openrouter-stub")
+@Profile("openrouter-stub")
+public class OpenRouterStubController {
+
+    private static final String[] WORDS = {
+            "apprendre", "objectif", "note", "révision", "progrès", "tâche", "méthode", "exemple",
+            "concept", "pratique", "résumé", "question", "réponse", "étape", "plan", "idée"
+    };
+
+    private final ObjectMapper objectMapper;
+    private final long latencyMedianMs;
+    private final double latencySigma;
+    private final double errorRate;
+    private final int errorStatus;
+    private final int completionTokens;
+    private final long tokenIntervalMs;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "openrouter-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public OpenRouterStubController(ObjectMapper objectMapper,
+                                    @Value("${openrouter.stub.latency-median-ms:800}") long latencyMedianMs,
+                                    @Value("${openrouter.stub.latency-p95-ms:2500}") long latencyP95Ms,
+                                    @Value("${openrouter.stub.error-rate:0.0}") double errorRate,
+                                    @Value("${openrouter.stub.error-status:503}") int errorStatus,
+                                    @Value("${openrouter.stub.completion-tokens:120}") int completionTokens,
+                                    @Value("${openrouter.stub.token-interval-ms:15}") long tokenIntervalMs) {
+        this.objectMapper = objectMapper;
+        this.latencyMedianMs = latencyMedianMs;
+        // p95 d'une log-normale = médiane * exp(1,645 * sigma)
+        this.latencySigma = latencyP95Ms > latencyMedianMs && latencyMedianMs > 0
+                ? Math.log((double) latencyP95Ms / latencyMedianMs) / 1.645
+                : 0;
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        this.completionTokens = completionTokens;
+        this.tokenIntervalMs = tokenIntervalMs;
+    }
+
+    @PostMapping(value = "/chat/completions", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> complete(@RequestBody OpenRouterRequest request) {
+        CompletableFuture<ResponseEntity<Map<String, Object>>> response = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            if (shouldFail()) {
+                response.complete(ResponseEntity.status(errorStatus).body(errorBody()));
+                return;
+            }
+            List<String> tokens = generateTokens();
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("id", "stub-" + System.nanoTime());
+            body.put("model", request.getModel());
+            body.put("choices", List.of(Map.of(
+                    "index", 0,
+                    "finish_reason", "stop",
+                    "message", Map.of("role", "assistant", "content", String.join("", tokens)))));
+            body.put("usage", usage(request, tokens.size()));
+            response.complete(ResponseEntity.ok(body));
+        }, sampleLatencyMs(), TimeUnit.MILLISECONDS);
+        return response;
+    }
+
+    /**
+     * Variante streaming, choisie comme chez OpenRouter par l'en-tête Accept: text/event-stream
+     */
+    @PostMapping(value = "/chat/completions", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@RequestBody OpenRouterRequest request) {
+        if (shouldFail()) {
+            return ResponseEntity.status(errorStatus).build();
+        }
+
+        SseEmitter emitter = new SseEmitter(0L);
+        List<String> tokens = generateTokens();
+        // La latence tirée correspond au délai avant le premier fragment
+        scheduleToken(emitter, request, tokens, 0, sampleLatencyMs());
+        return ResponseEntity.ok(emitter);
+    }
+
+    private void scheduleToken(SseEmitter emitter, OpenRouterRequest request, List<String> tokens, int index, long delayMs) {
+        scheduler.schedule(() -> {
+            try {
+                if (index < tokens.size()) {
+                    Map<String, Object> chunk = Map.of("model", request.getModel(),
+                            "choices", List.of(Map.of("index", 0, "delta", Map.of("content", tokens.get(index)))));
+                    emitter.send(SseEmitter.event().data(objectMapper.writeValueAsString(chunk)));
+                    scheduleToken(emitter, request, tokens, index + 1, tokenIntervalMs);
+                } else {
+                    Map<String, Object> last = Map.of("model", request.getModel(),
+                            "choices", List.of(Map.of("index", 0, "delta", Map.of(), "finish_reason", "stop")),
+                            "usage", usage(request, tokens.size()));
+                    emitter.send(SseEmitter.event().data(objectMapper.writeValueAsString(last)));
+                    emitter.send(SseEmitter.event().data("[DONE]"));
+                    emitter.complete();
+                }
+            } catch (IOException e) {
+                // Le client a abandonné le flux
+                emitter.completeWithError(e);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean shouldFail() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    private long sampleLatencyMs() {
+        double gaussian = ThreadLocalRandom.current().nextGaussian();
+        return Math.max(0, Math.round(latencyMedianMs * Math.exp(latencySigma * gaussian)));
+    }
+
+    private List<String> generateTokens() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] tokens = new String[completionTokens];
+        for (int i = 0; i < completionTokens; i++) {
+            tokens[i] = (i == 0 ? "" : " ") + WORDS[random.nextInt(WORDS.length)];
+        }
+        return List.of(tokens);
+    }
+
+    private Map<String, Object> usage(OpenRouterRequest request, int completion) {
+        int prompt = 0;
+        if (request.getMessages() != null) {
+            for (Message message : request.getMessages()) {
+                prompt += TokenEstimator.estimateMessage(message.getContent());
+            }
+        }
+        return Map.of("prompt_tokens", prompt, "completion_tokens", completion, "total_tokens", prompt + completion);
+    }
+
+    private Map<String, Object> errorBody() {
+        return Map.of("error", Map.of("code", errorStatus, "message", "Échec simulé par la doublure OpenRouter"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,18 @@
+package com.skillup.common.exception;
+
+/**
+ * Demande refusée par un contrôle de charge : renvoyée en 429 avec un en-tête Retry-After
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,5 +1,6 @@
 package com.skillup.common.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -18,6 +19,7 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Optional;
 
 @Component
 public class JwtFilter extends OncePerRequestFilter {
@@ -41,11 +43,15 @@ public class JwtFilter extends OncePerRequestFilter {
 
             if (StringUtils.hasText(jwt)) {
                 logger.debug("Validating JWT token");
-                if (jwtUtil.validateToken(jwt)) {
-                    String username = jwtUtil.getUsernameFromToken(jwt);
+                Optional<Claims> claims = jwtUtil.verifyToken(jwt);
+                if (claims.isPresent()) {
+                    String username = claims.get().getSubject();
                     logger.debug("JWT token valid for user: {}", username);
-                    
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+
+                    // Principal tiré des claims du jeton ; les jetons antérieurs aux claims passent par la base
+                    UserDetails userDetails = jwtUtil.getUserFromClaims(claims.get())
+                            .<UserDetails>map(user -> user)
+                            .orElseGet(() -> userDetailsService.loadUserByUsername(username));
                     UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                             userDetails, null, userDetails.getAuthorities());
                     authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
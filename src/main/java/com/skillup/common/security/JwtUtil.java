@@ -1,5 +1,6 @@
 package com.skillup.common.security;
 
+import com.skillup.auth.model.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
@@ -11,14 +12,27 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @Component
 public class JwtUtil {
     private static final Logger log = LoggerFactory.getLogger(JwtUtil.class);
 
+    // Claims de l'utilisateur signés dans le jeton d'accès : le principal est reconstruit sans requête
+    private static final String CLAIM_USER_ID = "uid";
+    private static final String CLAIM_NAME = "name";
+    private static final String CLAIM_ROLE = "role";
+
     @Value("${jwt.secret}")
     private String jwtSecret;
 
@@ -28,20 +42,45 @@ public class JwtUtil {
     @Value("${jwt.refresh-token.expiration}")
     private long refreshTokenExpiration;
 
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize;
+
     private Key key;
+    // Le parser construit est immuable et sans état : partagé par toutes les requêtes
+    private JwtParser parser;
+
+    // Claims des jetons déjà vérifiés, par empreinte SHA-256 du jeton, dans l'ordre d'accès
+    private Map<String, Claims> verifiedTokens;
 
     @PostConstruct
     public void init() {
         this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.verifiedTokens = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Claims> eldest) {
+                return size() > verifiedCacheMaxSize;
+            }
+        });
     }
 
     public String generateToken(Authentication authentication) {
-        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        return generateToken((UserDetails) authentication.getPrincipal());
+    }
+
+    public String generateToken(UserDetails userDetails) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpiration);
 
-        return Jwts.builder()
-                .setSubject(userDetails.getUsername())
+        JwtBuilder builder = Jwts.builder()
+                .setSubject(userDetails.getUsername());
+        if (userDetails instanceof User user) {
+            builder.claim(CLAIM_USER_ID, user.getId())
+                    .claim(CLAIM_NAME, user.getName())
+                    .claim(CLAIM_ROLE, user.getRole());
+        }
+
+        return builder
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
                 .signWith(key)
@@ -60,23 +99,67 @@ public class JwtUtil {
                 .compact();
     }
 
-    public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * Vérifie la signature et l'expiration du jeton une seule fois et renvoie ses claims.
+     * Un jeton déjà vérifié est servi depuis le cache tant qu'il n'a pas expiré ;
+     * les claims renvoyés sont partagés et ne doivent pas être modifiés.
+     */
+    public Optional<Claims> verifyToken(String token) {
+        String fingerprint = fingerprint(token);
+        Claims cached = verifiedTokens.get(fingerprint);
+        if (cached != null) {
+            if (cached.getExpiration() != null && cached.getExpiration().after(new Date())) {
+                return Optional.of(cached);
+            }
+            verifiedTokens.remove(fingerprint);
+            return Optional.empty();
+        }
+
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            if (verifiedCacheMaxSize > 0 && claims.getExpiration() != null) {
+                verifiedTokens.put(fingerprint, claims);
+            }
+            return Optional.of(claims);
+        } catch (JwtException | IllegalArgumentException e) {
+            log.error("Invalid JWT token: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Utilisateur authentifié par le jeton, construit à partir de ses claims : une instance détachée
+     * sans mot de passe, qui ne doit pas être enregistrée telle quelle. Vide pour un jeton émis avant
+     * l'ajout des claims, que l'appelant résout alors par l'email.
+     */
+    public Optional<User> getUserFromClaims(Claims claims) {
+        String userId = claims.get(CLAIM_USER_ID, String.class);
+        String role = claims.get(CLAIM_ROLE, String.class);
+        if (userId == null || role == null) {
+            return Optional.empty();
+        }
+        User user = new User();
+        user.setId(userId);
+        user.setEmail(claims.getSubject());
+        user.setName(claims.get(CLAIM_NAME, String.class));
+        user.setRole(role);
+        return Optional.of(user);
+    }
 
-        return claims.getSubject();
+    public String getUsernameFromToken(String token) {
+        return parser.parseClaimsJws(token).getBody().getSubject();
     }
 
     public boolean validateToken(String token) {
+        return verifyToken(token).isPresent();
+    }
+
+    private static String fingerprint(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            log.error("Invalid JWT token: {}", e.getMessage());
-            return false;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
         }
     }
-} 
\ No newline at end of file
+}
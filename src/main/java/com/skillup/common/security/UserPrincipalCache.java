@@ -0,0 +1,119 @@
+package com.skillup.common.security;
+
+import com.skillup.auth.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache borné des utilisateurs chargés par le UserDetailsService, par email et pour une durée limitée.
+ * Les entrées sont des copies immuables : chaque lecture renvoie une nouvelle instance détachée,
+ * qu'un appelant peut modifier sans affecter les autres requêtes. Les changements de mot de passe,
+ * de rôle ou de compte doivent appeler evict.
+ */
+@Component
+public class UserPrincipalCache implements UserCache {
+
+    private final long ttlNanos;
+    private final int maxSize;
+
+    // Entrées dans l'ordre d'accès : les moins récemment utilisées sont évincées au-delà de maxSize
+    private final Map<String, Entry> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public UserPrincipalCache(MeterRegistry meterRegistry,
+                              @Value("${security.user-cache.ttl-ms:300000}") long ttlMs,
+                              @Value("${security.user-cache.max-size:10000}") int maxSize) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.maxSize = maxSize;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > UserPrincipalCache.this.maxSize;
+            }
+        });
+
+        this.hits = Counter.builder("security.user-cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("security.user-cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("security.user-cache.size", entries, Map::size).register(meterRegistry);
+        Gauge.builder("security.user-cache.hit-ratio", this, UserPrincipalCache::hitRatio).register(meterRegistry);
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        if (ttlNanos <= 0 || maxSize <= 0) {
+            return null;
+        }
+        Entry entry = entries.get(username);
+        if (entry == null || entry.expiresAt() - System.nanoTime() <= 0) {
+            if (entry != null) {
+                entries.remove(username, entry);
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.toUser();
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        if (ttlNanos <= 0 || maxSize <= 0 || !(user instanceof User entity)) {
+            return;
+        }
+        entries.put(entity.getEmail(), new Entry(entity.getId(), entity.getEmail(), entity.getName(),
+                entity.getPassword(), entity.getRole(), System.nanoTime() + ttlNanos));
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        entries.remove(username);
+    }
+
+    /**
+     * Retire l'utilisateur du cache, puis de nouveau après la validation de la transaction en cours :
+     * un chargement concurrent ne peut pas y remettre l'état d'avant la modification
+     */
+    public void evict(String email) {
+        removeUserFromCache(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    removeUserFromCache(email);
+                }
+            });
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private record Entry(String id, String email, String name, String password, String role, long expiresAt) {
+
+        User toUser() {
+            User user = new User();
+            user.setId(id);
+            user.setEmail(email);
+            user.setName(name);
+            user.setPassword(password);
+            user.setRole(role);
+            return user;
+        }
+    }
+}
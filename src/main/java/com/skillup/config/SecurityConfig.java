@@ -1,23 +1,27 @@
 package com.skillup.config;
 
+import com.skillup.auth.model.User;
 import com.skillup.auth.repository.UserRepository;
+import com.skillup.common.security.BoundedBCryptPasswordEncoder;
 import com.skillup.common.security.JwtAuthEntryPoint;
 import com.skillup.common.security.JwtFilter;
+import com.skillup.common.security.UserPrincipalCache;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.CachingUserDetailsService;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -32,6 +36,8 @@ public class SecurityConfig {
     private final JwtFilter jwtFilter;
     private final JwtAuthEntryPoint jwtAuthEntryPoint;
     private final UserRepository userRepository;
+    private final UserPrincipalCache userPrincipalCache;
+    private final BoundedBCryptPasswordEncoder passwordEncoder;
     private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
 
     @Bean
@@ -45,7 +51,11 @@ public class SecurityConfig {
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
             )
             .authorizeHttpRequests(auth -> auth
+                // Les dispatches asynchrones (SSE) concernent une requête déjà authentifiée
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers("/auth/**").permitAll()
+                // Doublure OpenRouter, exposée uniquement avec le profil "openrouter-stub"
+                .requestMatchers("/openrouter-stub/**").permitAll()
                 .anyRequest().authenticated()
             )
             .authenticationProvider(authenticationProvider())
@@ -58,14 +68,20 @@ public class SecurityConfig {
     public AuthenticationProvider authenticationProvider() {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService());
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setPasswordEncoder(passwordEncoder);
+        // Hash recalculé à la connexion quand il a été produit avec un autre coût BCrypt que security.bcrypt.strength
+        authProvider.setUserDetailsPasswordService(passwordUpgrade());
         return authProvider;
     }
 
     @Bean
     public UserDetailsService userDetailsService() {
-        return username -> userRepository.findByEmail(username)
-            .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        // Utilisateurs gardés en cache par email, invalidés par ProfileService lors des modifications
+        CachingUserDetailsService cachingService = new CachingUserDetailsService(username ->
+            userRepository.findByEmail(username)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found")));
+        cachingService.setUserCache(userPrincipalCache);
+        return cachingService;
     }
 
     @Bean
@@ -73,8 +89,15 @@ public class SecurityConfig {
         return config.getAuthenticationManager();
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    private UserDetailsPasswordService passwordUpgrade() {
+        return (userDetails, newPassword) -> {
+            User user = userRepository.findByEmail(userDetails.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+            user.setPassword(newPassword);
+            user = userRepository.save(user);
+            userPrincipalCache.evict(user.getEmail());
+            logger.info("Mot de passe de {} recalculé avec le coût BCrypt configuré", user.getEmail());
+            return user;
+        };
     }
 } 
\ No newline at end of file
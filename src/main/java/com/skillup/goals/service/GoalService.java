@@ -2,6 +2,7 @@ package com.skillup.goals.service;
 
 import com.skillup.achievements.service.AchievementProgressService;
 import com.skillup.auth.model.User;
+import com.skillup.auth.repository.UserRepository;
 import com.skillup.goals.controller.GoalController;
 import com.skillup.goals.dto.GoalRequest;
 import com.skillup.goals.dto.GoalResponse;
@@ -21,6 +22,7 @@ import org.slf4j.LoggerFactory;
 public class GoalService {
 
     private final GoalRepository goalRepository;
+    private final UserRepository userRepository;
     private final TaskRepository taskRepository;
     private final AchievementProgressService achievementProgressService;
     private static final Logger logger = LoggerFactory.getLogger(GoalController.class);
@@ -31,7 +33,7 @@ public class GoalService {
         goal.setTitle(request.getTitle());
         goal.setDescription(request.getDescription());
         goal.setDueDate(request.getDueDate());
-        goal.setUser(user);
+        goal.setUser(userRepository.getReferenceById(user.getId()));
 
         goal = goalRepository.save(goal);
 
@@ -2,6 +2,7 @@ package com.skillup.goals.service;
 
 import com.skillup.achievements.service.AchievementProgressService;
 import com.skillup.auth.model.User;
+import com.skillup.auth.repository.UserRepository;
 import com.skillup.goals.dto.GoalRequest;
 import com.skillup.goals.dto.GoalResponse;
 import com.skillup.goals.model.Goal;
@@ -22,6 +23,7 @@ import java.util.stream.Collectors;
 public class GoalServiceWithAchievements {
 
     private final GoalRepository goalRepository;
+    private final UserRepository userRepository;
     private final AchievementProgressService achievementProgressService;
 
     @Transactional
@@ -30,7 +32,7 @@ public class GoalServiceWithAchievements {
         goal.setTitle(request.getTitle());
         goal.setDescription(request.getDescription());
         goal.setDueDate(request.getDueDate());
-        goal.setUser(user);
+        goal.setUser(userRepository.getReferenceById(user.getId()));
 
         goal = goalRepository.save(goal);
         
@@ -3,6 +3,7 @@ package com.skillup.notes.controller;
 import com.skillup.auth.model.User;
 import com.skillup.notes.dto.NoteRequest;
 import com.skillup.notes.dto.NoteResponse;
+import com.skillup.notes.dto.QuizResponse;
 import com.skillup.notes.service.NoteService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -40,6 +41,15 @@ public class NoteController {
         return ResponseEntity.ok(noteService.getNoteById(id,user));
     }
 
+    @GetMapping("/{id}/quiz")
+    public ResponseEntity<QuizResponse> getNoteQuiz(
+            @AuthenticationPrincipal User user,
+            @PathVariable String id) {
+        return noteService.getNoteQuiz(id, user)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping
     public ResponseEntity<List<NoteResponse>> getUserNotes(
             @AuthenticationPrincipal User user,
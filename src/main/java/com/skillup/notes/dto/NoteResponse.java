@@ -14,6 +14,9 @@ public class NoteResponse {
     private String goalTitle;
     private String taskId;
     private String taskTitle;
+    private String aiSummary;
+    private boolean aiSummaryUpToDate;
+    private LocalDateTime aiSummaryAt;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -24,6 +27,9 @@ public class NoteResponse {
         response.setContent(note.getContent());
         response.setCreatedAt(note.getCreatedAt());
         response.setUpdatedAt(note.getUpdatedAt());
+        response.setAiSummary(note.getAiSummary());
+        response.setAiSummaryUpToDate(note.isAiSummaryUpToDate());
+        response.setAiSummaryAt(note.getAiSummaryAt());
         
         if (note.getGoal() != null) {
             response.setGoalId(note.getGoal().getId());
@@ -0,0 +1,51 @@
+package com.skillup.notes.dto;
+
+import com.skillup.notes.model.Note;
+import com.skillup.notes.model.Quiz;
+import com.skillup.notes.model.QuizQuestion;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Data
+public class QuizResponse {
+    private String id;
+    private String noteId;
+    // false si la note a changé depuis la génération : un nouveau quiz est en préparation
+    private boolean upToDate;
+    private String model;
+    private LocalDateTime createdAt;
+    private List<Question> questions;
+
+    @Data
+    public static class Question {
+        private String question;
+        private List<String> options;
+        private int answerIndex;
+        private String explanation;
+    }
+
+    public static QuizResponse fromEntity(Quiz quiz, Note note) {
+        QuizResponse response = new QuizResponse();
+        response.setId(quiz.getId());
+        response.setNoteId(note.getId());
+        response.setUpToDate(quiz.getContentHash().equals(note.getContentHash()));
+        response.setModel(quiz.getModel());
+        response.setCreatedAt(quiz.getCreatedAt());
+        response.setQuestions(quiz.getQuestions().stream()
+                .map(QuizResponse::toQuestion)
+                .collect(Collectors.toList()));
+        return response;
+    }
+
+    private static Question toQuestion(QuizQuestion entity) {
+        Question question = new Question();
+        question.setQuestion(entity.getQuestion());
+        question.setOptions(entity.getOptions());
+        question.setAnswerIndex(entity.getAnswerIndex());
+        question.setExplanation(entity.getExplanation());
+        return question;
+    }
+}
@@ -8,7 +8,11 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
 
 @Data
 @Entity
@@ -39,6 +43,24 @@ public class Note {
     @JoinColumn(name = "task_id")
     private Task task;
 
+    // Empreinte du titre et du contenu
+    @Column(length = 64)
+    private String contentHash;
+
+    // Résumé généré en tâche de fond ; à jour tant que aiSummaryHash est égal à contentHash
+    @Column(columnDefinition = "TEXT")
+    private String aiSummary;
+
+    @Column(length = 64)
+    private String aiSummaryHash;
+
+    private LocalDateTime aiSummaryAt;
+
+    // Empreinte du contenu dont la réponse du modèle n'a pas pu être lue comme un quiz :
+    // pas de nouvel essai tant que la note ne change pas
+    @Column(length = 64)
+    private String quizFailedHash;
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -55,4 +77,34 @@ public class Note {
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
     }
+
+    // L'empreinte suit le titre et le contenu dès leur modification, avant même l'enregistrement
+    public void setTitle(String title) {
+        this.title = title;
+        this.contentHash = hashOf(title, content);
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+        this.contentHash = hashOf(title, content);
+    }
+
+    public boolean isAiSummaryUpToDate() {
+        return aiSummary != null && aiSummaryHash != null && aiSummaryHash.equals(contentHash);
+    }
+
+    public static String hashOf(String title, String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] titleBytes = (title == null ? "" : title).getBytes(StandardCharsets.UTF_8);
+            // Titre préfixé par sa longueur pour séparer sans ambiguïté titre et contenu
+            digest.update(Integer.toString(titleBytes.length).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(titleBytes);
+            digest.update((content == null ? "" : content).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
 } 
\ No newline at end of file
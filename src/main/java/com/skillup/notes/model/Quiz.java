@@ -0,0 +1,50 @@
+package com.skillup.notes.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quiz à choix multiples généré à partir d'une note. Un seul quiz par note ; il correspond au contenu
+ * dont l'empreinte est contentHash et n'est régénéré que lorsque la note change.
+ */
+@Data
+@Entity
+@Table(name = "quizzes", uniqueConstraints = @UniqueConstraint(name = "uk_quizzes_note", columnNames = "note_id"))
+@NoArgsConstructor
+@AllArgsConstructor
+public class Quiz {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "note_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Note note;
+
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    private String model;
+
+    @OneToMany(mappedBy = "quiz", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("position asc")
+    private List<QuizQuestion> questions = new ArrayList<>();
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
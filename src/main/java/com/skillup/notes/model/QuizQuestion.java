@@ -0,0 +1,50 @@
+package com.skillup.notes.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.type.SqlTypes;
+
+import java.util.List;
+
+@Data
+@Entity
+@Table(name = "quiz_questions")
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuizQuestion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "quiz_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Quiz quiz;
+
+    @Column(nullable = false)
+    private int position;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String question;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(nullable = false, columnDefinition = "json")
+    private List<String> options;
+
+    // Indice de la bonne réponse dans options
+    @Column(nullable = false)
+    private int answerIndex;
+
+    @Column(columnDefinition = "TEXT")
+    private String explanation;
+}
@@ -4,9 +4,14 @@ import com.skillup.auth.model.User;
 import com.skillup.goals.model.Goal;
 import com.skillup.notes.model.Note;
 import com.skillup.tasks.model.Task;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -15,4 +20,35 @@ public interface NoteRepository extends JpaRepository<Note, String> {
     List<Note> findByUserAndGoalOrderByCreatedAtDesc(User user, Goal goal);
     List<Note> findByUserAndTaskOrderByCreatedAtDesc(User user, Task task);
     long countByUser(User user);
+    List<Note> findByUser_Email(String email);
+
+    @Query("select count(n) from Note n where n.user = :user and n.aiSummary is not null " +
+           "and n.aiSummaryHash = n.contentHash")
+    long countWithUpToDateAiSummary(@Param("user") User user);
+
+    /**
+     * Notes sans résumé, ou dont le contenu a changé depuis le résumé (empreinte absente pour les notes
+     * antérieures à son introduction), les plus anciennes d'abord
+     */
+    @Query("select n.id from Note n where n.aiSummaryHash is null or n.contentHash is null " +
+           "or n.aiSummaryHash <> n.contentHash order by n.updatedAt asc")
+    List<String> findIdsNeedingAiSummary(Pageable pageable);
+
+    // Mise à jour directe, sans @PreUpdate : updatedAt reste la date de la dernière modification par l'utilisateur.
+    // Sans effet si la note a changé depuis sa lecture.
+    @Modifying
+    @Query("update Note n set n.aiSummary = :summary, n.aiSummaryHash = :hash, n.contentHash = :hash, " +
+           "n.aiSummaryAt = :at where n.id = :id and (n.contentHash = :hash or n.contentHash is null)")
+    int recordAiSummary(@Param("id") String id, @Param("summary") String summary, @Param("hash") String hash,
+                        @Param("at") LocalDateTime at);
+
+    // Mise à jour directe, sans @PreUpdate. Sans effet si la note a changé depuis sa lecture.
+    @Modifying
+    @Query("update Note n set n.quizFailedHash = :hash, n.contentHash = :hash " +
+           "where n.id = :id and (n.contentHash = :hash or n.contentHash is null)")
+    int recordQuizFailure(@Param("id") String id, @Param("hash") String hash);
+
+    @Modifying
+    @Query("update Note n set n.contentHash = :hash where n.id = :id and n.contentHash is null")
+    int backfillContentHash(@Param("id") String id, @Param("hash") String hash);
 }
\ No newline at end of file
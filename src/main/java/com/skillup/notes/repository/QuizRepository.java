@@ -0,0 +1,42 @@
+package com.skillup.notes.repository;
+
+import com.skillup.notes.model.Quiz;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface QuizRepository extends JpaRepository<Quiz, String> {
+
+    @EntityGraph(attributePaths = "questions")
+    Optional<Quiz> findByNote_Id(String noteId);
+
+    /**
+     * Quiz d'une note de l'utilisateur, seulement s'il correspond encore au contenu de la note
+     */
+    @EntityGraph(attributePaths = "questions")
+    @Query("select q from Quiz q where q.note.id = :noteId and q.note.user.email = :email " +
+           "and q.contentHash = q.note.contentHash")
+    Optional<Quiz> findCurrentForUser(@Param("noteId") String noteId, @Param("email") String email);
+
+    /**
+     * Notes sans quiz à jour, les plus anciennes d'abord. Une note dont le contenu actuel a déjà donné
+     * une réponse illisible (quizFailedHash) est écartée jusqu'à sa prochaine modification.
+     */
+    @Query("select n.id from Note n where (n.contentHash is null or not exists " +
+           "(select 1 from Quiz q where q.note = n and q.contentHash = n.contentHash)) " +
+           "and (n.quizFailedHash is null or n.contentHash is null or n.quizFailedHash <> n.contentHash) " +
+           "order by n.updatedAt asc")
+    List<String> findNoteIdsNeedingQuiz(Pageable pageable);
+
+    @Modifying
+    @Query("delete from Quiz q where q.note.id = :noteId")
+    int deleteByNoteId(@Param("noteId") String noteId);
+}
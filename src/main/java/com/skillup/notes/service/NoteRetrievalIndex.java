@@ -0,0 +1,325 @@
+package com.skillup.notes.service;
+
+import com.skillup.notes.model.Note;
+import com.skillup.notes.repository.NoteRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Index de recherche local sur les notes de chaque utilisateur, pour fournir à l'assistant les passages
+ * utiles sans coller la note entière dans le prompt. Les notes sont découpées en passages notés par BM25,
+ * sans service d'embeddings externe. L'index d'un utilisateur est construit depuis la base à sa première
+ * recherche, puis tenu à jour par NoteService après chaque création, modification ou suppression validée.
+ */
+@Service
+public class NoteRetrievalIndex {
+
+    // Paramètres BM25 usuels : saturation de la fréquence d'un terme et normalisation par la longueur
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern PARAGRAPHS = Pattern.compile("\\n\\s*\\n");
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "le", "la", "les", "un", "une", "des", "du", "de", "et", "ou", "en", "au", "aux", "ce", "ces", "cet",
+            "cette", "est", "sont", "que", "qui", "quoi", "dans", "sur", "pour", "par", "avec", "sans", "pas", "ne",
+            "se", "sa", "son", "ses", "il", "elle", "ils", "elles", "on", "nous", "vous", "je", "tu", "me", "te",
+            "mon", "ma", "mes", "ton", "ta", "tes", "leur", "leurs", "comment", "quel", "quelle", "quels",
+            "quelles", "plus", "tout", "tous", "fait", "faire", "etre", "avoir", "peux", "peut",
+            "the", "a", "an", "of", "to", "in", "for", "and", "or", "is", "are", "what", "how", "with");
+
+    private final NoteRepository noteRepository;
+    private final int chunkWords;
+    private final int maxUsers;
+
+    // Index par utilisateur (email), dans l'ordre d'accès : les moins récemment utilisés sont évincés
+    private final Map<String, UserIndex> indexes;
+
+    public NoteRetrievalIndex(NoteRepository noteRepository, MeterRegistry meterRegistry,
+                              @Value("${notes.retrieval.chunk-words:150}") int chunkWords,
+                              @Value("${notes.retrieval.max-users:1000}") int maxUsers) {
+        this.noteRepository = noteRepository;
+        this.chunkWords = chunkWords;
+        this.maxUsers = maxUsers;
+        this.indexes = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserIndex> eldest) {
+                return size() > NoteRetrievalIndex.this.maxUsers;
+            }
+        });
+        Gauge.builder("notes.retrieval.indexed.users", indexes, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Passages les plus pertinents des notes de l'utilisateur pour la question, du meilleur au moins bon.
+     * Seuls les passages qui partagent au moins un terme avec la question sont renvoyés.
+     */
+    public List<Passage> search(String userEmail, String question, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(question)));
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        return indexFor(userEmail).search(terms, limit);
+    }
+
+    /**
+     * Indexe (ou réindexe) une note une fois la transaction en cours validée
+     */
+    public void indexNote(String userEmail, Note note) {
+        String noteId = note.getId();
+        String title = note.getTitle();
+        String content = note.getContent();
+        afterCommit(() -> {
+            UserIndex index = indexes.get(userEmail);
+            // Un index pas encore construit lira la note en base à sa première recherche
+            if (index != null) {
+                index.put(noteId, title, chunk(content));
+            }
+        });
+    }
+
+    public void removeNote(String userEmail, String noteId) {
+        afterCommit(() -> {
+            UserIndex index = indexes.get(userEmail);
+            if (index != null) {
+                index.remove(noteId);
+            }
+        });
+    }
+
+    private UserIndex indexFor(String userEmail) {
+        UserIndex index;
+        boolean created = false;
+        synchronized (indexes) {
+            index = indexes.get(userEmail);
+            if (index == null) {
+                index = new UserIndex();
+                indexes.put(userEmail, index);
+                created = true;
+            }
+        }
+        if (created) {
+            // Lecture hors du verrou global ; les recherches concurrentes attendent sur l'index
+            List<Note> notes;
+            try {
+                notes = noteRepository.findByUser_Email(userEmail);
+            } catch (RuntimeException e) {
+                indexes.remove(userEmail, index);
+                index.load(List.of());
+                throw e;
+            }
+            index.load(notes);
+        }
+        return index;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Découpe une note en passages d'environ chunkWords mots, en respectant les paragraphes
+     * tant qu'ils tiennent dans un passage
+     */
+    private List<String> chunk(String content) {
+        List<String> chunks = new ArrayList<>();
+        if (content == null || content.isBlank()) {
+            return chunks;
+        }
+        StringBuilder current = new StringBuilder();
+        int currentWords = 0;
+        for (String paragraph : PARAGRAPHS.split(content.trim())) {
+            String[] words = paragraph.trim().split("\\s+");
+            if (words.length == 0 || words[0].isEmpty()) {
+                continue;
+            }
+            if (currentWords > 0 && currentWords + words.length > chunkWords) {
+                chunks.add(current.toString());
+                current.setLength(0);
+                currentWords = 0;
+            }
+            if (words.length > chunkWords) {
+                // Paragraphe trop long : découpé mot à mot
+                for (int from = 0; from < words.length; from += chunkWords) {
+                    chunks.add(String.join(" ", List.of(words).subList(from, Math.min(words.length, from + chunkWords))));
+                }
+                continue;
+            }
+            if (currentWords > 0) {
+                current.append("\n\n");
+            }
+            current.append(paragraph.trim());
+            currentWords += words.length;
+        }
+        if (currentWords > 0) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD))
+                .replaceAll("");
+        for (String term : NON_WORD.split(normalized)) {
+            if (term.length() >= 2 && !STOP_WORDS.contains(term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Passage d'une note renvoyé par la recherche
+     */
+    public record Passage(String noteId, String noteTitle, String text, double score) {
+    }
+
+    private static final class Chunk {
+        private final String noteId;
+        private final String noteTitle;
+        private final String text;
+        private final Map<String, Integer> termFrequencies = new HashMap<>();
+        private int length;
+
+        private Chunk(String noteId, String noteTitle, String text) {
+            this.noteId = noteId;
+            this.noteTitle = noteTitle;
+            this.text = text;
+            // Le titre fait partie de chaque passage : une question sur le sujet de la note le retrouve
+            for (String term : tokenize(noteTitle + " " + text)) {
+                termFrequencies.merge(term, 1, Integer::sum);
+                length++;
+            }
+        }
+    }
+
+    /**
+     * Index inversé des passages d'un utilisateur
+     */
+    private final class UserIndex {
+        private final Map<String, List<Chunk>> chunksByNote = new HashMap<>();
+        private final Map<String, Set<Chunk>> postings = new HashMap<>();
+        private long totalLength;
+        private int chunkCount;
+
+        private boolean loading = true;
+        // Notes supprimées pendant le chargement initial : la lecture en base a pu les voir encore
+        private final Set<String> removedWhileLoading = new HashSet<>();
+
+        /**
+         * Ajoute les notes lues en base, sauf celles déjà réindexées ou supprimées entre-temps
+         */
+        synchronized void load(List<Note> notes) {
+            for (Note note : notes) {
+                if (!chunksByNote.containsKey(note.getId()) && !removedWhileLoading.contains(note.getId())) {
+                    put(note.getId(), note.getTitle(), chunk(note.getContent()));
+                }
+            }
+            removedWhileLoading.clear();
+            loading = false;
+            notifyAll();
+        }
+
+        synchronized void put(String noteId, String title, List<String> texts) {
+            remove(noteId);
+            List<Chunk> chunks = new ArrayList<>(texts.size());
+            for (String text : texts) {
+                Chunk chunk = new Chunk(noteId, title, text);
+                chunks.add(chunk);
+                for (String term : chunk.termFrequencies.keySet()) {
+                    postings.computeIfAbsent(term, key -> new HashSet<>()).add(chunk);
+                }
+                totalLength += chunk.length;
+                chunkCount++;
+            }
+            chunksByNote.put(noteId, chunks);
+        }
+
+        synchronized void remove(String noteId) {
+            if (loading) {
+                removedWhileLoading.add(noteId);
+            }
+            List<Chunk> chunks = chunksByNote.remove(noteId);
+            if (chunks == null) {
+                return;
+            }
+            for (Chunk chunk : chunks) {
+                for (String term : chunk.termFrequencies.keySet()) {
+                    Set<Chunk> posting = postings.get(term);
+                    posting.remove(chunk);
+                    if (posting.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+                totalLength -= chunk.length;
+                chunkCount--;
+            }
+        }
+
+        synchronized List<Passage> search(List<String> terms, int limit) {
+            while (loading) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return List.of();
+                }
+            }
+            if (chunkCount == 0) {
+                return List.of();
+            }
+            double averageLength = (double) totalLength / chunkCount;
+            Map<Chunk, Double> scores = new HashMap<>();
+            for (String term : terms) {
+                Set<Chunk> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (chunkCount - posting.size() + 0.5) / (posting.size() + 0.5));
+                for (Chunk chunk : posting) {
+                    int tf = chunk.termFrequencies.get(term);
+                    double norm = tf + K1 * (1 - B + B * chunk.length / averageLength);
+                    scores.merge(chunk, idf * tf * (K1 + 1) / norm, Double::sum);
+                }
+            }
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Chunk, Double>comparingByValue(Comparator.reverseOrder()))
+                    .limit(limit)
+                    .map(entry -> new Passage(entry.getKey().noteId, entry.getKey().noteTitle,
+                            entry.getKey().text, entry.getValue()))
+                    .toList();
+        }
+    }
+}
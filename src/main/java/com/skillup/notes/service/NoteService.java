@@ -2,12 +2,15 @@ package com.skillup.notes.service;
 
 import com.skillup.achievements.service.AchievementProgressService;
 import com.skillup.auth.model.User;
+import com.skillup.auth.repository.UserRepository;
 import com.skillup.goals.model.Goal;
 import com.skillup.goals.repository.GoalRepository;
 import com.skillup.notes.dto.NoteRequest;
 import com.skillup.notes.dto.NoteResponse;
+import com.skillup.notes.dto.QuizResponse;
 import com.skillup.notes.model.Note;
 import com.skillup.notes.repository.NoteRepository;
+import com.skillup.notes.repository.QuizRepository;
 import com.skillup.tasks.model.Task;
 import com.skillup.tasks.repository.TaskRepository;
 import lombok.RequiredArgsConstructor;
@@ -15,6 +18,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,16 +26,19 @@ import java.util.stream.Collectors;
 public class NoteService {
 
     private final NoteRepository noteRepository;
+    private final UserRepository userRepository;
+    private final QuizRepository quizRepository;
     private final GoalRepository goalRepository;
     private final TaskRepository taskRepository;
     private final AchievementProgressService achievementProgressService;
+    private final NoteRetrievalIndex noteRetrievalIndex;
 
     @Transactional
     public NoteResponse createNote(NoteRequest request, User user) {
         Note note = new Note();
         note.setTitle(request.getTitle());
         note.setContent(request.getContent());
-        note.setUser(user);
+        note.setUser(userRepository.getReferenceById(user.getId()));
 
         if (request.getGoalId() != null) {
             Goal goal = goalRepository.findById(request.getGoalId())
@@ -52,6 +59,7 @@ public class NoteService {
         }
 
         note = noteRepository.save(note);
+        noteRetrievalIndex.indexNote(user.getEmail(), note);
 
         // Mettre à jour l'achievement "Prise de notes"
         achievementProgressService.checkNoteCreated(user);
@@ -94,6 +102,7 @@ public class NoteService {
         }
 
         note = noteRepository.save(note);
+        noteRetrievalIndex.indexNote(user.getEmail(), note);
         return NoteResponse.fromEntity(note);
     }
 
@@ -146,6 +155,22 @@ public class NoteService {
         return NoteResponse.fromEntity(note);
     }
 
+    /**
+     * Quiz généré à l'avance pour la note ; vide tant qu'il n'a pas encore été généré.
+     * Un quiz tiré d'une version antérieure de la note est renvoyé avec upToDate = false.
+     */
+    @Transactional(readOnly = true)
+    public Optional<QuizResponse> getNoteQuiz(String id, User user) {
+        Note note = noteRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Note not found"));
+
+        if (!note.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Not authorized to view this note");
+        }
+
+        return quizRepository.findByNote_Id(id).map(quiz -> QuizResponse.fromEntity(quiz, note));
+    }
+
     @Transactional
     public void deleteNote(String id, User user) {
         Note note = noteRepository.findById(id)
@@ -156,5 +181,6 @@ public class NoteService {
         }
 
         noteRepository.delete(note);
+        noteRetrievalIndex.removeNote(user.getEmail(), id);
     }
 }
@@ -2,6 +2,7 @@ package com.skillup.notes.service;
 
 import com.skillup.achievements.service.AchievementProgressService;
 import com.skillup.auth.model.User;
+import com.skillup.auth.repository.UserRepository;
 import com.skillup.goals.model.Goal;
 import com.skillup.goals.repository.GoalRepository;
 import com.skillup.notes.dto.NoteRequest;
@@ -26,6 +27,7 @@ import java.util.stream.Collectors;
 public class NoteServiceWithAchievements {
 
     private final NoteRepository noteRepository;
+    private final UserRepository userRepository;
     private final GoalRepository goalRepository;
     private final TaskRepository taskRepository;
     private final AchievementProgressService achievementProgressService;
@@ -35,7 +37,7 @@ public class NoteServiceWithAchievements {
         Note note = new Note();
         note.setTitle(request.getTitle());
         note.setContent(request.getContent());
-        note.setUser(user);
+        note.setUser(userRepository.getReferenceById(user.getId()));
 
         if (request.getGoalId() != null) {
             Goal goal = goalRepository.findById(request.getGoalId())
@@ -2,6 +2,8 @@ package com.skillup.profile.service;
 
 import com.skillup.auth.model.User;
 import com.skillup.auth.repository.UserRepository;
+import com.skillup.common.security.UserPrincipalCache;
+import com.skillup.notes.repository.NoteRepository;
 import com.skillup.profile.dto.PasswordChangeRequest;
 import com.skillup.profile.dto.ProfileRequest;
 import com.skillup.profile.dto.ProfileResponse;
@@ -28,6 +30,8 @@ public class ProfileService {
     private final UserProfileRepository profileRepository;
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final NoteRepository noteRepository;
+    private final UserPrincipalCache userPrincipalCache;
 
     @Transactional
     public ProfileResponse createProfile(User user) {
@@ -36,7 +40,7 @@ public class ProfileService {
         }
 
         UserProfile profile = new UserProfile();
-        profile.setUser(user);
+        profile.setUser(userRepository.getReferenceById(user.getId()));
         profile = profileRepository.save(profile);
         return ProfileResponse.fromEntity(profile);
     }
@@ -47,6 +51,20 @@ public class ProfileService {
             return getProfile(user);
         }
 
+        UserProfile profile = profileRepository.save(defaultProfile(user));
+        return ProfileResponse.fromEntity(profile);
+    }
+
+    /**
+     * Profil par défaut d'un utilisateur qui vient d'être créé, sans vérification préalable :
+     * l'insertion part avec les autres écritures de l'inscription, à la fin de la transaction
+     */
+    @Transactional
+    public void createDefaultProfileForNewUser(User user) {
+        profileRepository.save(defaultProfile(user));
+    }
+
+    private static UserProfile defaultProfile(User user) {
         UserProfile profile = new UserProfile();
         profile.setUser(user);
         
@@ -56,9 +74,7 @@ public class ProfileService {
         profile.setLocation("Non spécifié");
         profile.setOccupation("Non spécifié");
         profile.setAvatarUrl("/assets/images/default-avatar.png");
-        
-        profile = profileRepository.save(profile);
-        return ProfileResponse.fromEntity(profile);
+        return profile;
     }
 
     @Transactional
@@ -66,7 +82,7 @@ public class ProfileService {
         UserProfile profile = profileRepository.findByUser(user)
                 .orElseGet(() -> {
                     UserProfile newProfile = new UserProfile();
-                    newProfile.setUser(user);
+                    newProfile.setUser(userRepository.getReferenceById(user.getId()));
                     return newProfile;
                 });
 
@@ -102,20 +118,29 @@ public class ProfileService {
         UserProfile profile = profileRepository.findByUser(user)
                 .orElseThrow(() -> new RuntimeException("Profile not found"));
         profileRepository.delete(profile);
+        userPrincipalCache.evict(user.getEmail());
     }
 
-    @Transactional
-    public boolean changePassword(User user, PasswordChangeRequest request) {
+    /**
+     * Sans transaction englobante : la vérification et le hachage BCrypt, qui peuvent attendre leur tour
+     * dans le pool dédié, ne retiennent pas de connexion JDBC. Seule l'écriture du hash en ouvre une.
+     */
+    public boolean changePassword(User principal, PasswordChangeRequest request) {
+        // Le principal est construit depuis le jeton, sans mot de passe : l'utilisateur est lu en base
+        User user = userRepository.findById(principal.getId())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
         // Vérifier que le mot de passe actuel est correct
         if (!passwordEncoder.matches(request.getCurrentPassword(), user.getPassword())) {
             return false;
         }
         
-        // Mettre à jour le mot de passe
-        user.setPassword(passwordEncoder.encode(request.getNewPassword()));
-        
-        // Sauvegarder l'utilisateur avec le nouveau mot de passe
-        userRepository.save(user);
+        // Sans effet si le mot de passe a été changé entre-temps : la demande est alors refusée
+        String newPassword = passwordEncoder.encode(request.getNewPassword());
+        if (userRepository.updatePassword(user.getId(), user.getPassword(), newPassword) == 0) {
+            return false;
+        }
+        userPrincipalCache.evict(user.getEmail());
         
         return true;
     }
@@ -137,7 +162,7 @@ public class ProfileService {
         stats.setInProgressTasks(3);
         stats.setOverdueTasks(2);
         stats.setTotalNotes(30);
-        stats.setNotesWithAiSummary(10);
+        stats.setNotesWithAiSummary((int) noteRepository.countWithUpToDateAiSummary(user));
         
         // Calculer le nombre de jours depuis l'inscription
         stats.setJoinedDays((int) ChronoUnit.DAYS.between(profile.getCreatedAt(), LocalDateTime.now()));
@@ -2,6 +2,7 @@ package com.skillup.tasks.service;
 
 import com.skillup.achievements.service.AchievementProgressService;
 import com.skillup.auth.model.User;
+import com.skillup.auth.repository.UserRepository;
 import com.skillup.goals.model.Goal;
 import com.skillup.goals.repository.GoalRepository;
 import com.skillup.tasks.dto.TaskRequest;
@@ -20,6 +21,7 @@ import java.util.stream.Collectors;
 public class TaskService {
 
     private final TaskRepository taskRepository;
+    private final UserRepository userRepository;
     private final GoalRepository goalRepository;
     private final AchievementProgressService achievementProgressService;
 
@@ -30,7 +32,7 @@ public class TaskService {
         task.setDescription(request.getDescription());
         task.setDueDate(request.getDueDate());
         task.setPriority(request.getPriority());
-        task.setUser(user);
+        task.setUser(userRepository.getReferenceById(user.getId()));
 
         if (request.getGoalId() != null) {
             Goal goal = goalRepository.findById(request.getGoalId())